@@ -0,0 +1,46 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// one operation is one environment step: a 10 instruction frame on one instance
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int INSTANCES = 4096;
+    private static final int INSTRUCTIONS_PER_FRAME = 10;
+
+    @Param({"sprites", "arithmetic", "memory"})
+    public String rom;
+
+    private BatchEnvironment environment;
+    private int[] actions;
+
+    @Setup
+    public void setup() {
+        environment = new BatchEnvironment(BenchRoms.get(rom), INSTANCES, INSTRUCTIONS_PER_FRAME);
+        actions = new int[INSTANCES];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTANCES)
+    public long[] step() {
+        return environment.step(actions);
+    }
+}
@@ -0,0 +1,98 @@
+package screen;
+
+public final class BenchRoms {
+    // draws a grid of font glyphs, then flickers random digits across the screen
+    public static final int[] SPRITES = {
+        0x00E0,         // 200: CLS
+        0x6000,         // 202: V0 = 0
+        0x6100,         // 204: V1 = 0
+        0xA000,         // 206: I = font 0
+        0xD015,         // 208: draw V0, V1, 5
+        0x7008,         // 20A: V0 += 8
+        0x3040,         // 20C: skip if V0 == 64
+        0x1206,         // 20E: jump 206
+        0x6000,         // 210: V0 = 0
+        0x7106,         // 212: V1 += 6
+        0x311E,         // 214: skip if V1 == 30
+        0x1206,         // 216: jump 206
+        0x6210,         // 218: V2 = 16
+        0x6310,         // 21A: V3 = 16
+        0xC40F,         // 21C: V4 = rand & F
+        0xF429,         // 21E: I = font V4
+        0xD235,         // 220: draw V2, V3, 5
+        0xD235,         // 222: erase
+        0x7201,         // 224: V2 += 1
+        0x3230,         // 226: skip if V2 == 48
+        0x121C,         // 228: jump 21C
+        0x6210,         // 22A: V2 = 16
+        0x121C,         // 22C: jump 21C
+    };
+
+    // ALU-heavy loop with a subroutine call
+    public static final int[] ARITHMETIC = {
+        0x6001,         // 200: V0 = 1
+        0x6103,         // 202: V1 = 3
+        0x8014,         // 204: V0 += V1
+        0x8105,         // 206: V1 -= V0
+        0x8216,         // 208: V2 >>= 1
+        0x8A0E,         // 20A: VA <<= 1
+        0x2214,         // 20C: call 214
+        0x3000,         // 20E: skip if V0 == 0
+        0x1204,         // 210: jump 204
+        0x1200,         // 212: jump 200
+        0x8301,         // 214: V3 |= V0
+        0x8412,         // 216: V4 &= V1
+        0x8533,         // 218: V5 ^= V3
+        0x7401,         // 21A: V4 += 1
+        0x00EE,         // 21C: return
+    };
+
+    // score display loop: BCD, register load/store and digit drawing
+    public static final int[] MEMORY = {
+        0x6500,         // 200: V5 = 0
+        0x00E0,         // 202: CLS
+        0xA300,         // 204: I = 300
+        0xF533,         // 206: BCD V5
+        0xF265,         // 208: load V0..V2
+        0x6A00,         // 20A: VA = 0
+        0x6B00,         // 20C: VB = 0
+        0xF029,         // 20E: I = font V0
+        0xDAB5,         // 210: draw VA, VB, 5
+        0x7A05,         // 212: VA += 5
+        0xF129,         // 214: I = font V1
+        0xDAB5,         // 216: draw VA, VB, 5
+        0x7A05,         // 218: VA += 5
+        0xF229,         // 21A: I = font V2
+        0xDAB5,         // 21C: draw VA, VB, 5
+        0xA310,         // 21E: I = 310
+        0xF555,         // 220: store V0..V5
+        0xF51E,         // 222: I += V5
+        0x7501,         // 224: V5 += 1
+        0x1202,         // 226: jump 202
+    };
+
+    private BenchRoms() {
+    }
+
+    public static byte[] get(String name) {
+        switch (name) {
+            case "sprites":
+                return assemble(SPRITES);
+            case "arithmetic":
+                return assemble(ARITHMETIC);
+            case "memory":
+                return assemble(MEMORY);
+            default:
+                throw new IllegalArgumentException("Unknown ROM " + name);
+        }
+    }
+
+    public static byte[] assemble(int[] opcodes) {
+        byte[] data = new byte[opcodes.length * 2];
+        for (int i = 0; i < opcodes.length; i++) {
+            data[2 * i] = (byte) (opcodes[i] >> 8);
+            data[2 * i + 1] = (byte) opcodes[i];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,40 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClearBenchmark {
+    private Chip8CPU CPU;
+
+    @Setup
+    public void setup() {
+        CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(BenchRoms.get("sprites"));
+        for (int i = 0; i < 2000; i++) {
+            CPU.emulateCPUCycle();
+        }
+    }
+
+    @Benchmark
+    public int clearScreen() {
+        CPU.OP00E0();
+        return CPU.getPC();
+    }
+}
@@ -0,0 +1,50 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    // roughly the instruction mix of a typical game loop; operands keep I, the stack
+    // and key lookups in range when the sequence is replayed forever
+    private static final int[] MIX = {
+        0x6A12, 0x6B34, 0x7A01, 0x7B02, 0x8AB0, 0x8AB1, 0x8AB2, 0x8AB3,
+        0x8AB4, 0x8AB5, 0x8A06, 0x8AB7, 0x3A12, 0x4A12, 0x5AB0, 0x9AB0,
+        0xA300, 0xFA33, 0xF265, 0xF255, 0xF01E, 0x600A, 0xE09E, 0xE0A1,
+        0xF007, 0xF115, 0xF029, 0xD015, 0xC0FF, 0x2300, 0x00EE, 0x1200,
+    };
+
+    private Chip8CPU CPU;
+
+    @Setup
+    public void setup() {
+        CPU = new Chip8CPU();
+        CPU.initialize();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(32)
+    public int decodeMix() {
+        for (int opcode : MIX) {
+            CPU.setOpcode(opcode);
+            CPU.decode(opcode);
+        }
+        return CPU.getPC();
+    }
+}
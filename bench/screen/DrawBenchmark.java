@@ -0,0 +1,73 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+    private static final int SPRITE = 0x400;
+
+    @Param({"1", "5", "15"})
+    public int height;
+
+    // Every draw is repeated to undo itself, so a sprite on an empty background
+    // collides on half of the draws. An overlapping background that covers part of
+    // every sprite row makes every draw collide.
+    @Param({"empty", "overlapping"})
+    public String background;
+
+    // draws partly off the right edge to cover the clipping path as well
+    @Param({"12", "60"})
+    public int x;
+
+    private Chip8CPU CPU;
+    private int drawOpcode;
+
+    @Setup
+    public void setup() {
+        CPU = new Chip8CPU();
+        CPU.initialize();
+        for (int h = 0; h < 15; h++) {
+            CPU.setMemoryAtIndex(SPRITE + h, 0xA5);
+        }
+        CPU.setVRegisterAtIndex(0, x);
+        CPU.setVRegisterAtIndex(1, 8);
+        CPU.setIndexRegister(SPRITE);
+        drawOpcode = 0xD010 | height;
+
+        if (background.equals("overlapping")) {
+            for (int h = 0; h < height; h++) {
+                if (x < 64) {
+                    CPU.setGFXAtXY(x, 8 + h);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int drawSprite() {
+        CPU.setOpcode(drawOpcode);
+        CPU.OPDXYN();
+        int collision = CPU.getVRegisterAtIndex(0xF);
+        CPU.OPDXYN();
+        return collision + CPU.getVRegisterAtIndex(0xF);
+    }
+}
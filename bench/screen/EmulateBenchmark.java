@@ -0,0 +1,54 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmulateBenchmark {
+    private static final int INSTRUCTIONS_PER_FRAME = 10;
+    private static final int FRAMES = 100;
+
+    @Param({"sprites", "arithmetic", "memory"})
+    public String rom;
+
+    @Param({"interpreter", "block", "jit", "aot"})
+    public String engine;
+
+    private Chip8CPU CPU;
+    private ExecutionEngine executionEngine;
+
+    @Setup
+    public void setup() {
+        CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(BenchRoms.get(rom));
+        executionEngine = EngineType.parse(engine).create(CPU);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS_PER_FRAME * FRAMES)
+    public long emulateFrames() {
+        for (int f = 0; f < FRAMES; f++) {
+            executionEngine.run(INSTRUCTIONS_PER_FRAME);
+            CPU.updateTimers();
+        }
+        return CPU.getPC();
+    }
+}
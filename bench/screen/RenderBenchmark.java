@@ -0,0 +1,57 @@
+package screen;
+
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.canvas.Canvas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    private Canvas canvas;
+    private Screen screen;
+
+    @Setup
+    public void setup() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(BenchRoms.get("sprites"));
+        for (int i = 0; i < 2000; i++) {
+            CPU.emulateCPUCycle();
+        }
+
+        canvas = new Canvas(512, 256);
+        screen = new Screen();
+        screen.attach(canvas, CPU);
+    }
+
+    @Benchmark
+    public Canvas updateDisplay() {
+        screen.updateDisplay();
+        // nothing consumes the canvas command buffer offscreen; a full clear resets it
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        return canvas;
+    }
+
+    @Benchmark
+    public Canvas updateTwoRows() {
+        // the common case of one small sprite moving
+        screen.updateDisplay(0b11 << 12);
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        return canvas;
+    }
+}
@@ -0,0 +1,99 @@
+package screen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Recompiled ROMs on disk, one file per ROM content hash.
+public class AotCache {
+    private final Path directory;
+
+    public AotCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // chip8.aot.cache system property, or ~/.chip8/aot
+    public static AotCache defaultCache() {
+        String configured = System.getProperty("chip8.aot.cache");
+        if (configured != null) {
+            return new AotCache(Paths.get(configured));
+        }
+        return new AotCache(Paths.get(System.getProperty("user.home"), ".chip8", "aot"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    AotProgram load(String romHash) {
+        Path file = file(romHash);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return AotProgram.read(in);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void store(String romHash, AotProgram program) {
+        Path file = file(romHash);
+        try {
+            Files.createDirectories(directory);
+            // write to a temporary file first so concurrent launches never see a partial entry
+            Path temporary = Files.createTempFile(directory, romHash, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                program.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not write " + file + ": " + e.getMessage());
+        }
+    }
+
+    void delete(String romHash) {
+        Path file = file(romHash);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    Path file(String romHash) {
+        return directory.resolve(romHash + ".c8aot");
+    }
+
+    static String hash(Chip8CPU CPU) {
+        byte[] rom = new byte[CPU.getRomLength()];
+        for (int i = 0; i < rom.length; i++) {
+            rom[i] = (byte) CPU.getMemoryAtIndex(0x200 + i);
+        }
+        return hash(rom);
+    }
+
+    // hex SHA-256 of the ROM file contents, shared with the ROM library index
+    static String hash(byte[] rom) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(rom);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
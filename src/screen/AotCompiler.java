@@ -0,0 +1,127 @@
+package screen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import screen.ClassBuilder.CodeBuilder;
+import screen.ClassBuilder.CodeBuilder.Label;
+
+// Statically recompiles the code reachable from 0x200 into one class. Targets that
+// cannot be resolved ahead of time (BNNN, code reached only through data) are left
+// for the engine to interpret.
+final class AotCompiler {
+    static final String CLASS_NAME = "screen/AotProgram$Compiled";
+
+    private AotCompiler() {
+    }
+
+    static AotProgram compile(Chip8CPU CPU) {
+        List<Block> blocks = reachableBlocks(CPU);
+        BlockCompiler compiler = new BlockCompiler();
+        ClassBuilder builder = new ClassBuilder(CLASS_NAME, "java/lang/Object", "screen/CompiledProgram");
+        builder.defaultConstructor("java/lang/Object");
+
+        int[] starts = new int[blocks.size()];
+        int[] ends = new int[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            starts[i] = block.start;
+            ends[i] = block.end;
+            compiler.emitBlock(builder.method(ClassBuilder.ACC_PUBLIC | ClassBuilder.ACC_STATIC,
+                    methodName(block.start), BlockCompiler.BLOCK_DESCRIPTOR, BlockCompiler.MAX_LOCALS), block);
+        }
+
+        CodeBuilder execute = builder.method(ClassBuilder.ACC_PUBLIC, "execute", BlockCompiler.BLOCK_DESCRIPTOR, 2);
+        Label[] targets = new Label[starts.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = execute.label();
+        }
+        Label notCompiled = execute.label();
+        execute.aload(1);
+        execute.invokevirtual(BlockCompiler.CPU_CLASS, "getPC", "()I");
+        execute.lookupswitch(starts, targets, notCompiled);
+        for (int i = 0; i < targets.length; i++) {
+            execute.mark(targets[i]);
+            execute.aload(1);
+            execute.invokestatic(CLASS_NAME, methodName(starts[i]), BlockCompiler.BLOCK_DESCRIPTOR);
+            execute.op(CodeBuilder.IRETURN);
+        }
+        execute.mark(notCompiled);
+        execute.push(-1);
+        execute.op(CodeBuilder.IRETURN);
+
+        return new AotProgram(starts, ends, builder.toByteArray());
+    }
+
+    private static String methodName(int start) {
+        return "b" + Integer.toHexString(start);
+    }
+
+    // compilable blocks reachable from 0x200 inside the ROM, sorted by start address
+    static List<Block> reachableBlocks(Chip8CPU CPU) {
+        int limit = 0x200 + CPU.getRomLength();
+        boolean[] seen = new boolean[4096];
+        Deque<Integer> pending = new ArrayDeque<Integer>();
+        List<Block> blocks = new ArrayList<Block>();
+        pending.push(0x200);
+
+        while (!pending.isEmpty()) {
+            int start = pending.pop();
+            if (start < 0x200 || start + 1 >= limit || seen[start]) {
+                continue;
+            }
+            seen[start] = true;
+            Block block = BlockEngine.decode(CPU, start);
+            if (BlockCompiler.canCompile(block)) {
+                blocks.add(block);
+            }
+            addSuccessors(block, pending);
+        }
+
+        blocks.sort((a, b) -> Integer.compare(a.start, b.start));
+        return blocks;
+    }
+
+    private static void addSuccessors(Block block, Deque<Integer> pending) {
+        int last = block.end - 2;
+        int opcode = block.opcodes[block.opcodes.length - 1];
+        if (block.conditionalJump >= 0) {
+            pending.push(opcode & 0x0FFF);
+            pending.push(block.end);
+            return;
+        }
+        if (!OpcodeTable.isKnown(opcode)) {
+            return;
+        }
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                if (opcode != 0x00EE) {
+                    pending.push(block.end);
+                }
+                return;
+            case 0x1000:
+                pending.push(opcode & 0x0FFF);
+                return;
+            case 0x2000:
+                // 00EE returns to the instruction after the call
+                pending.push(opcode & 0x0FFF);
+                pending.push(last + 2);
+                return;
+            case 0xB000:
+                return;
+            default:
+                if (BlockEngine.isSkip(opcode)) {
+                    pending.push(last + 2);
+                    pending.push(last + 4);
+                } else {
+                    if ((opcode & 0xF0FF) == 0xF00A) {
+                        // a key wait re-enters its own address until a key is down
+                        pending.push(last);
+                    }
+                    pending.push(block.end);
+                }
+        }
+    }
+}
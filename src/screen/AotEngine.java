@@ -0,0 +1,82 @@
+package screen;
+
+import java.util.Arrays;
+
+// Runs a ROM from its ahead-of-time recompiled class, loading it from the AotCache
+// when this ROM has been compiled before. Blocks the static analysis missed, and
+// recompiled blocks that get overwritten, fall back to the JIT tier.
+public class AotEngine extends JitEngine {
+    private final CompiledProgram program;
+    // end address of the recompiled block starting at each address, 0 if none
+    private final int[] compiledEnd = new int[4096];
+    private final boolean loadedFromCache;
+
+    public AotEngine(Chip8CPU CPU) {
+        this(CPU, AotCache.defaultCache());
+    }
+
+    public AotEngine(Chip8CPU CPU, AotCache cache) {
+        super(CPU);
+        String romHash = AotCache.hash(CPU);
+        AotProgram cached = cache.load(romHash);
+        CompiledProgram loaded = null;
+        if (cached != null) {
+            try {
+                loaded = install(cached);
+            } catch (RuntimeException e) {
+                // e.g. a class from another JDK; rebuild it instead of failing on every launch
+                System.err.println("ERROR: Discarding " + cache.file(romHash) + ": " + e.getMessage());
+                cache.delete(romHash);
+                Arrays.fill(compiledEnd, 0);
+            }
+        }
+        loadedFromCache = loaded != null;
+        if (loaded == null) {
+            AotProgram compiled = AotCompiler.compile(CPU);
+            cache.store(romHash, compiled);
+            loaded = install(compiled);
+        }
+        program = loaded;
+    }
+
+    private CompiledProgram install(AotProgram compiled) {
+        for (int i = 0; i < compiled.starts.length; i++) {
+            compiledEnd[compiled.starts[i]] = compiled.ends[i];
+        }
+        return compiled.instantiate();
+    }
+
+    int execute(Block block) {
+        if (compiledEnd[block.start] != 0) {
+            return program.execute(CPU);
+        }
+        return super.execute(block);
+    }
+
+    void memoryWritten(int address, int length) {
+        super.memoryWritten(address, length);
+        int limit = Math.min(address + length, compiledEnd.length);
+        for (int a = Math.max(0, address); a < limit; a++) {
+            for (int start = Math.max(0, a - 2 * MAX_BLOCK_LENGTH + 1); start <= a; start++) {
+                if (compiledEnd[start] > a) {
+                    compiledEnd[start] = 0;
+                }
+            }
+        }
+    }
+
+    // recompiled blocks that have not been overwritten
+    public int getRecompiledBlocks() {
+        int count = 0;
+        for (int end : compiledEnd) {
+            if (end != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean isLoadedFromCache() {
+        return loadedFromCache;
+    }
+}
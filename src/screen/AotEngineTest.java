@@ -0,0 +1,210 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AotEngineTest {
+
+    private static final int[] PROGRAM = {
+        0x6A00,         // 200: VA = 0
+        0x2214,         // 202: call 214
+        0x7B01,         // 204: VB += 1
+        0x3B03,         // 206: skip if VB == 3
+        0x1200,         // 208: jump 200
+        0x606A,         // 20A: V0 = 6A
+        0x6155,         // 20C: V1 = 55
+        0xA200,         // 20E: I = 200
+        0xF155,         // 210: store V0..V1, rewriting 200 to 6A55
+        0x1218,         // 212: jump 218
+        0x8A14,         // 214: VA += V1
+        0x00EE,         // 216: return
+        0x6B00,         // 218: VB = 0
+        0x1200,         // 21A: jump 200
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AotCache cache;
+
+    @Before
+    public void init() throws IOException {
+        cache = new AotCache(folder.newFolder("aot").toPath());
+    }
+
+    private static Chip8CPU load(int[] program) {
+        byte[] data = new byte[program.length * 2];
+        for (int i = 0; i < program.length; i++) {
+            data[2 * i] = (byte) (program[i] >> 8);
+            data[2 * i + 1] = (byte) program[i];
+        }
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(data);
+        return CPU;
+    }
+
+    @Test
+    public void testReachableBlocks() {
+        Chip8CPU CPU = load(PROGRAM);
+
+        // 200 (call), 204..20A (skip + jump), 20A..212 (store), 212, 214, 218
+        int[] starts = AotCompiler.compile(CPU).starts;
+
+        assertArrayEquals(new int[] {0x200, 0x204, 0x20A, 0x212, 0x214, 0x218}, starts);
+    }
+
+    @Test
+    public void testCompiledClassName() {
+        // a name of its own, so stack traces and profilers do not mix it up with AotProgram
+        String name = AotCompiler.compile(load(PROGRAM)).instantiate().getClass().getName();
+
+        assertTrue(name, name.startsWith("screen.AotProgram$Compiled"));
+    }
+
+    @Test
+    public void testCachedAcrossLaunches() {
+        AotEngine first = new AotEngine(load(PROGRAM), cache);
+        AotEngine second = new AotEngine(load(PROGRAM), cache);
+
+        assertFalse(first.isLoadedFromCache());
+        assertTrue(second.isLoadedFromCache());
+        assertTrue(Files.isRegularFile(cache.file(AotCache.hash(load(PROGRAM)))));
+    }
+
+    @Test
+    public void testStaleEntryIsRecompiled() throws IOException {
+        Chip8CPU CPU = load(PROGRAM);
+        Path file = cache.file(AotCache.hash(CPU));
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+
+        AotEngine engine = new AotEngine(CPU, cache);
+
+        assertFalse(engine.isLoadedFromCache());
+        assertTrue(Files.size(file) > 8);
+    }
+
+    private static byte[] entry(AotProgram program) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        program.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    // a damaged entry is reported, replaced, and never stops the engine from running
+    private void assertRecoversFrom(byte[] entry) throws IOException {
+        Chip8CPU CPU = load(PROGRAM);
+        Path file = cache.file(AotCache.hash(CPU));
+        Files.write(file, entry);
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errors, true));
+        AotEngine engine;
+        try {
+            engine = new AotEngine(CPU, cache);
+        } finally {
+            System.setErr(err);
+        }
+
+        assertFalse(engine.isLoadedFromCache());
+        assertTrue(errors.toString(), errors.toString().contains(file.toString()));
+        Chip8CPU reference = load(PROGRAM);
+        new Interpreter(reference).run(40);
+        engine.run(40);
+        assertEquals(reference.getPC(), CPU.getPC());
+        assertEquals(reference.getVRegisterAtIndex(0xB), CPU.getVRegisterAtIndex(0xB));
+        assertTrue(new AotEngine(load(PROGRAM), cache).isLoadedFromCache());
+    }
+
+    @Test
+    public void testNegativeBlockCountIsRecompiled() throws IOException {
+        byte[] entry = entry(AotCompiler.compile(load(PROGRAM)));
+        // the count follows the magic and version
+        entry[8] = entry[9] = entry[10] = entry[11] = (byte) 0xFF;
+
+        assertRecoversFrom(entry);
+    }
+
+    @Test
+    public void testBlockOutsideMemoryIsRecompiled() throws IOException {
+        AotProgram compiled = AotCompiler.compile(load(PROGRAM));
+
+        assertRecoversFrom(entry(new AotProgram(new int[] {0x1000}, new int[] {0x1002}, compiled.classBytes)));
+    }
+
+    @Test
+    public void testUndefinableClassIsRecompiled() throws IOException {
+        AotProgram compiled = AotCompiler.compile(load(PROGRAM));
+        byte[] garbage = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 0};
+
+        assertRecoversFrom(entry(new AotProgram(compiled.starts, compiled.ends, garbage)));
+    }
+
+    @Test
+    public void testMatchesInterpreter() {
+        Chip8CPU reference = load(PROGRAM);
+        Chip8CPU target = load(PROGRAM);
+        ExecutionEngine interpreter = new Interpreter(reference);
+        ExecutionEngine engine = new AotEngine(target, cache);
+
+        for (int budget = 1; budget < 40; budget++) {
+            interpreter.run(budget);
+            engine.run(budget);
+            assertEquals(reference.getPC(), target.getPC());
+            assertEquals(reference.getStackPointer(), target.getStackPointer());
+            for (int i = 0; i < 16; i++) {
+                assertEquals(reference.getVRegisterAtIndex(i), target.getVRegisterAtIndex(i));
+            }
+        }
+        // the overwritten block at 200 ran as 6A55 rather than the recompiled 6A00
+        assertEquals(0x6A, target.getMemoryAtIndex(0x200));
+    }
+
+    @Test
+    public void testStateLoadKeepsRecompiledBlocks() {
+        // 200: V0 += 1, 202: jump 200
+        Chip8CPU CPU = load(new int[] {0x7001, 0x1200});
+        AotEngine engine = new AotEngine(CPU, cache);
+        ByteBuffer state = ByteBuffer.allocate(Chip8CPU.STATE_SIZE);
+        CPU.saveState(state);
+        int recompiled = engine.getRecompiledBlocks();
+        engine.run(100);
+
+        // the same program comes back, so none of its code was written
+        state.flip();
+        CPU.loadState(state);
+        engine.run(100);
+
+        assertTrue(recompiled > 0);
+        assertEquals(recompiled, engine.getRecompiledBlocks());
+        assertEquals(50, CPU.getVRegisterAtIndex(0));
+    }
+
+    @Test
+    public void testStateLoadDropsChangedCode() {
+        Chip8CPU CPU = load(new int[] {0x7001, 0x1200});
+        AotEngine engine = new AotEngine(CPU, cache);
+        ByteBuffer state = ByteBuffer.allocate(Chip8CPU.STATE_SIZE);
+        Chip8CPU other = load(new int[] {0x7002, 0x1200});
+        other.saveState(state);
+        int recompiled = engine.getRecompiledBlocks();
+
+        state.flip();
+        CPU.loadState(state);
+        engine.run(100);
+
+        assertEquals(recompiled - 1, engine.getRecompiledBlocks());
+        assertEquals(100, CPU.getVRegisterAtIndex(0));
+    }
+}
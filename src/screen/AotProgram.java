@@ -0,0 +1,78 @@
+package screen;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// A recompiled ROM: the generated class plus the address range of every compiled
+// block, which the engine needs to drop blocks that get overwritten.
+final class AotProgram {
+    private static final int MAGIC = 0x43384154;
+    private static final int MEMORY_SIZE = 4096;
+    private static final int MAX_CLASS_SIZE = 16 << 20;
+    // bump whenever generated code changes so stale cache entries are recompiled
+    static final int FORMAT_VERSION = 3;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    final int[] starts;
+    final int[] ends;
+    final byte[] classBytes;
+
+    AotProgram(int[] starts, int[] ends, byte[] classBytes) {
+        this.starts = starts;
+        this.ends = ends;
+        this.classBytes = classBytes;
+    }
+
+    CompiledProgram instantiate() {
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(classBytes, true);
+            return (CompiledProgram) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not load recompiled ROM", e);
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            out.writeShort(starts[i]);
+            out.writeShort(ends[i]);
+        }
+        out.writeInt(classBytes.length);
+        out.write(classBytes);
+    }
+
+    // returns null when the data was written by another format version; a damaged
+    // entry is an IOException rather than something the engine would index with
+    static AotProgram read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int count = in.readInt();
+        if (count < 0 || count > MEMORY_SIZE) {
+            throw new IOException("Bad block count " + count);
+        }
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = in.readUnsignedShort();
+            ends[i] = in.readUnsignedShort();
+            if (starts[i] >= ends[i] || ends[i] > MEMORY_SIZE) {
+                throw new IOException(String.format("Bad block %X-%X", starts[i], ends[i]));
+            }
+        }
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_CLASS_SIZE) {
+            throw new IOException("Bad class length " + length);
+        }
+        byte[] classBytes = new byte[length];
+        in.readFully(classBytes);
+        return new AotProgram(starts, ends, classBytes);
+    }
+}
@@ -0,0 +1,216 @@
+package screen;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+// Plays the sound timer. The emulation thread hands over one tone flag per emulated
+// frame through a lock-free ring and never waits for a real-time sink. The audio
+// thread turns each flag into exactly SAMPLES_PER_FRAME samples of square wave or
+// silence in a preallocated buffer, so the tone starts and stops on the frame whose
+// timer edge caused it. A real-time sink is kept at least one buffer ahead of the
+// speaker: while no frame is ready (pause, key wait, a slow host) it gets silence,
+// and when frames pile up beyond the latency target (fast forward) the oldest are
+// dropped. An offline sink, such as a WAV file, gets every frame instead.
+public class AudioOutput {
+    public static final int SAMPLE_RATE = 44100;
+    public static final int SAMPLES_PER_FRAME = SAMPLE_RATE / FrameScheduler.FRAME_RATE;
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+    public static final int DEFAULT_LATENCY_MILLIS = 50;
+    public static final int DEFAULT_BUFFER_SAMPLES = 256;
+
+    private static final double TONE_HZ = 440;
+    private static final short AMPLITUDE = 8000;
+    private static final int FRAME_BYTES = SAMPLES_PER_FRAME * 2;
+    // about a second of frames
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+
+    private final AudioSink sink;
+    private final boolean realTime;
+    // frames a real-time sink may have waiting before the oldest are dropped
+    private final int maxBacklog;
+    private final long waitNanos;
+    private final byte[] frameBuffer = new byte[FRAME_BYTES];
+    private final byte[] silence;
+    private final boolean[] tones = new boolean[CAPACITY];
+    // next slot to write, advanced by the emulation thread
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to read, advanced by the audio thread
+    private final AtomicLong head = new AtomicLong();
+    // written by the emulation thread
+    private final AtomicLong overflows = new AtomicLong();
+    // written by the audio thread
+    private final AtomicLong framesPlayed = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+    private final Thread thread = new Thread(this::play, "chip8-audio");
+    private volatile boolean running = true;
+    private volatile boolean waiting;
+    // audio thread only
+    private double phase;
+    private boolean primed;
+
+    public AudioOutput(AudioSink sink, int latencyMillis, int bufferSamples) {
+        if (latencyMillis <= 0 || bufferSamples <= 0) {
+            throw new IllegalArgumentException("Audio latency and buffer size must be positive");
+        }
+        this.sink = sink;
+        realTime = sink.isRealTime();
+        maxBacklog = Math.max(1, (latencyMillis * FrameScheduler.FRAME_RATE + 999) / 1000);
+        silence = new byte[bufferSamples * 2];
+        waitNanos = realTime ? bufferSamples * 500_000_000L / SAMPLE_RATE : FrameScheduler.FRAME_NANOS;
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    // -Dchip8.audio picks the sink: line (the default), off, or a .wav file to write;
+    // -Dchip8.audio.latency=MS and -Dchip8.audio.buffer=SAMPLES tune a line
+    public static AudioOutput fromProperties() {
+        String target = System.getProperty("chip8.audio", "line");
+        int latencyMillis = Integer.getInteger("chip8.audio.latency", DEFAULT_LATENCY_MILLIS);
+        int bufferSamples = Integer.getInteger("chip8.audio.buffer", DEFAULT_BUFFER_SAMPLES);
+        AudioSink sink = AudioSink.NULL;
+        try {
+            if (target.equals("line")) {
+                sink = new LineSink(FORMAT, lineBufferBytes(latencyMillis, bufferSamples));
+            } else if (!target.equals("off")) {
+                sink = new WavSink(Paths.get(target), FORMAT);
+            }
+        } catch (LineUnavailableException | IllegalArgumentException | IOException e) {
+            System.err.println("ERROR: No audio output: " + e.getMessage());
+        }
+        return new AudioOutput(sink, Math.max(1, latencyMillis), Math.max(1, bufferSamples));
+    }
+
+    // the line holds the latency target, but always room for two buffers
+    static int lineBufferBytes(int latencyMillis, int bufferSamples) {
+        return Math.max(SAMPLE_RATE * latencyMillis / 1000, 2 * bufferSamples) * FORMAT.getFrameSize();
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // emulation thread, once per emulated frame, with whether the sound timer was
+    // running during it; a real-time sink that fell a whole ring behind loses the frame
+    public void frame(boolean tone) {
+        long t = tail.get();
+        while (t - head.get() == CAPACITY) {
+            if (realTime || !thread.isAlive()) {
+                overflows.lazySet(overflows.get() + 1);
+                return;
+            }
+            // an offline sink keeps every frame, so the producer waits for the writer
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(100_000);
+        }
+        tones[(int) t & MASK] = tone;
+        // a full store, so the waiting flag below is read after the frame is visible
+        tail.set(t + 1);
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // stops the audio thread once an offline sink has every frame, then closes the sink
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void play() {
+        try {
+            while (running || !realTime && head.get() != tail.get()) {
+                if (head.get() != tail.get()) {
+                    if (realTime) {
+                        skipBacklog();
+                    }
+                    long h = head.get();
+                    boolean tone = tones[(int) h & MASK];
+                    head.lazySet(h + 1);
+                    synthesize(tone);
+                    write(frameBuffer, FRAME_BYTES);
+                    framesPlayed.lazySet(framesPlayed.get() + 1);
+                } else if (realTime && sink.queuedBytes() < silence.length) {
+                    // the next frame is late; a gap in the tone beats a click from running dry
+                    phase = 0;
+                    write(silence, silence.length);
+                } else {
+                    waiting = true;
+                    if (running && head.get() == tail.get()) {
+                        LockSupport.parkNanos(this, waitNanos);
+                    }
+                    waiting = false;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void skipBacklog() {
+        long h = head.get();
+        long backlog = tail.get() - h;
+        if (backlog > maxBacklog) {
+            head.lazySet(h + backlog - maxBacklog);
+            skippedFrames.lazySet(skippedFrames.get() + backlog - maxBacklog);
+        }
+    }
+
+    // a square wave that starts at the frame boundary, or silence
+    private void synthesize(boolean tone) {
+        if (!tone) {
+            Arrays.fill(frameBuffer, (byte) 0);
+            phase = 0;
+            return;
+        }
+        double step = TONE_HZ / SAMPLE_RATE;
+        for (int i = 0; i < FRAME_BYTES; i += 2) {
+            short sample = phase < 0.5 ? AMPLITUDE : -AMPLITUDE;
+            frameBuffer[i] = (byte) sample;
+            frameBuffer[i + 1] = (byte) (sample >> 8);
+            phase += step;
+            if (phase >= 1) {
+                phase -= 1;
+            }
+        }
+    }
+
+    // a real-time sink that had nothing left to play before this write has underrun
+    private void write(byte[] data, int length) throws IOException {
+        if (realTime && primed && sink.queuedBytes() == 0) {
+            underruns.lazySet(underruns.get() + 1);
+        }
+        sink.write(data, length);
+        primed = true;
+    }
+
+    public long getFramesPlayed() {
+        return framesPlayed.get();
+    }
+
+    // frames lost to a full ring or skipped to stay within the latency target
+    public long getDroppedFrames() {
+        return overflows.get() + skippedFrames.get();
+    }
+
+    public long getUnderruns() {
+        return underruns.get();
+    }
+}
@@ -0,0 +1,138 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Test;
+
+public class AudioOutputTest {
+
+    // plays nothing, and has always just run dry unless a write is held
+    private static class DrainingSink implements AudioSink {
+        private final CountDownLatch release;
+
+        DrainingSink(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(byte[] data, int length) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isRealTime() {
+            return true;
+        }
+    }
+
+    @Test
+    public void testToneFollowsSoundTimer() throws Exception {
+        Path file = Files.createTempFile("chip8", ".wav");
+        try {
+            Chip8CPU CPU = new Chip8CPU();
+            CPU.initialize();
+            // 200: V0 = 3, 202: sound timer = V0, 204: jump 204
+            CPU.loadROM(new byte[] {0x60, 0x03, (byte) 0xF0, 0x18, 0x12, 0x04});
+            FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+            AudioOutput audio = new AudioOutput(new WavSink(file, AudioOutput.FORMAT), 50, 256);
+            scheduler.setAudio(audio);
+            audio.start();
+            for (int i = 0; i < 6; i++) {
+                scheduler.runFrame();
+            }
+            audio.close();
+
+            // three frames of tone from the frame that set the timer, then silence
+            short[] samples = readSamples(file.toFile());
+            assertEquals(samples.length, 6 * AudioOutput.SAMPLES_PER_FRAME);
+            for (int i = 0; i < samples.length; i++) {
+                boolean tone = i < 3 * AudioOutput.SAMPLES_PER_FRAME;
+                assertEquals("sample " + i, samples[i] != 0, tone);
+            }
+            assertEquals(audio.getFramesPlayed(), 6);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testOfflineSinkGetsEveryFrame() {
+        AudioOutput audio = new AudioOutput(AudioSink.NULL, 50, 256);
+        audio.start();
+        // far more than the ring holds, faster than real time
+        for (int i = 0; i < 1000; i++) {
+            audio.frame(i % 2 == 0);
+        }
+        audio.close();
+        assertEquals(audio.getFramesPlayed(), 1000);
+        assertEquals(audio.getDroppedFrames(), 0);
+        assertEquals(audio.getUnderruns(), 0);
+    }
+
+    @Test
+    public void testRealTimeSinkDropsBacklog() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AudioOutput audio = new AudioOutput(new DrainingSink(release), 50, 256);
+        audio.start();
+        // the emulator never waits, even while the sink is stuck
+        for (int i = 0; i < 200; i++) {
+            audio.frame(true);
+        }
+        release.countDown();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (audio.getFramesPlayed() + audio.getDroppedFrames() < 200 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        // a sink that keeps running dry is refilled with silence, and every refill is an underrun
+        while (audio.getUnderruns() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        audio.close();
+
+        assertEquals(audio.getFramesPlayed() + audio.getDroppedFrames(), 200);
+        // 50 ms is three frames, plus the one held in the stuck write
+        assertTrue(audio.getFramesPlayed() <= 4);
+        assertTrue(audio.getUnderruns() > 0);
+    }
+
+    private static short[] readSamples(File file) throws Exception {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file)) {
+            assertEquals(in.getFormat().getSampleRate(), AudioOutput.SAMPLE_RATE, 0);
+            assertEquals(in.getFormat().getSampleSizeInBits(), 16);
+            assertEquals(in.getFormat().getChannels(), 1);
+            byte[] bytes = readAll(in);
+            short[] samples = new short[bytes.length / 2];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) (bytes[2 * i] & 0xFF | bytes[2 * i + 1] << 8);
+            }
+            return samples;
+        }
+    }
+
+    private static byte[] readAll(AudioInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) in.getFrameLength() * in.getFormat().getFrameSize()];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        assertEquals(read, bytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,28 @@
+package screen;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Where AudioOutput sends its 16-bit PCM. Only the audio thread calls a sink, so
+// write may block. A real-time sink is played as it is written and reports how
+// much it still holds, which is how AudioOutput keeps it fed and finds underruns.
+@FunctionalInterface
+public interface AudioSink extends Closeable {
+    // discards everything, for running without a sound device
+    AudioSink NULL = (data, length) -> {};
+
+    void write(byte[] data, int length) throws IOException;
+
+    default boolean isRealTime() {
+        return false;
+    }
+
+    // bytes written but not played yet
+    default int queuedBytes() {
+        return 0;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
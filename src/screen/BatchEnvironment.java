@@ -0,0 +1,462 @@
+package screen;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Many machines running the same ROM, stored as a struct of arrays so a batch
+// of environments costs a handful of flat arrays instead of one object graph
+// each. Instance i owns memory[i * 4096 ...], V[i * 16 ...], gfx[i * 32 ...]
+// and slot i of every scalar register. step() runs one frame on every instance,
+// spread over a fork-join pool, then fills the preallocated reward and done
+// buffers. Instructions behave exactly as in Chip8CPU, except that addresses
+// wrap at 4 KB and unknown opcodes are skipped silently where the CPU would
+// throw or log.
+public class BatchEnvironment {
+    public static final int MEMORY_SIZE = 4096;
+    public static final int ROWS = 32;
+    private static final int REGISTERS = 16;
+    private static final int STACK_SIZE = 16;
+    // smallest number of instances worth handing to another worker
+    private static final int MIN_SLICE = 16;
+
+    // called on a pool thread after each instance's frame; must only read that instance
+    @FunctionalInterface
+    public interface RewardFunction {
+        float reward(BatchEnvironment environment, int instance);
+    }
+
+    @FunctionalInterface
+    public interface DoneCondition {
+        boolean isDone(BatchEnvironment environment, int instance);
+    }
+
+    private final int instances;
+    private final int cyclesPerFrame;
+    // font and ROM as laid out by Chip8CPU, copied into an instance on reset
+    private final byte[] image = new byte[MEMORY_SIZE];
+    private final long seed;
+
+    // registers are bytes like Chip8CPU's, read with & 0xFF
+    private final byte[] memory;
+    private final byte[] V;
+    private final short[] stack;
+    private final long[] gfx;
+    private final int[] indexRegister;
+    private final int[] PC;
+    private final int[] stackPointer;
+    private final int[] delayTimer;
+    private final int[] soundTimer;
+    // one bit per key
+    private final int[] keys;
+    private final long[] random;
+
+    private final float[] rewards;
+    private final boolean[] dones;
+    private RewardFunction rewardFunction = (environment, instance) -> 0f;
+    private DoneCondition doneCondition = (environment, instance) -> false;
+
+    private final ForkJoinPool pool;
+    private final Slice[] slices;
+    private final Step step = new Step();
+
+    public BatchEnvironment(byte[] rom, int instances, int cyclesPerFrame) {
+        this(rom, instances, cyclesPerFrame, 0L, ForkJoinPool.commonPool());
+    }
+
+    public BatchEnvironment(byte[] rom, int instances, int cyclesPerFrame, long seed, ForkJoinPool pool) {
+        if (instances <= 0 || cyclesPerFrame <= 0) {
+            throw new IllegalArgumentException("Need at least one instance and one cycle per frame");
+        }
+        this.instances = instances;
+        this.cyclesPerFrame = cyclesPerFrame;
+        this.seed = seed;
+        this.pool = pool;
+
+        Chip8CPU boot = new Chip8CPU();
+        boot.initialize();
+        boot.loadROM(rom);
+        for (int a = 0; a < MEMORY_SIZE; a++) {
+            image[a] = (byte) boot.getMemoryAtIndex(a);
+        }
+
+        memory = new byte[instances * MEMORY_SIZE];
+        V = new byte[instances * REGISTERS];
+        stack = new short[instances * STACK_SIZE];
+        gfx = new long[instances * ROWS];
+        indexRegister = new int[instances];
+        PC = new int[instances];
+        stackPointer = new int[instances];
+        delayTimer = new int[instances];
+        soundTimer = new int[instances];
+        keys = new int[instances];
+        random = new long[instances];
+        rewards = new float[instances];
+        dones = new boolean[instances];
+
+        int sliceCount = Math.max(1, Math.min((instances + MIN_SLICE - 1) / MIN_SLICE, pool.getParallelism() * 4));
+        slices = new Slice[sliceCount];
+        for (int s = 0; s < sliceCount; s++) {
+            slices[s] = new Slice((int) ((long) instances * s / sliceCount), (int) ((long) instances * (s + 1) / sliceCount));
+        }
+
+        for (int i = 0; i < instances; i++) {
+            // mixed, so that no instance's stream is another's shifted by a few draws
+            random[i] = SplitMix64.mix(seed + (i + 1) * SplitMix64.GAMMA);
+            reset(i);
+        }
+    }
+
+    public long[] reset(int instance) {
+        int i = instance;
+        System.arraycopy(image, 0, memory, i * MEMORY_SIZE, MEMORY_SIZE);
+        Arrays.fill(V, i * REGISTERS, (i + 1) * REGISTERS, (byte) 0);
+        Arrays.fill(stack, i * STACK_SIZE, (i + 1) * STACK_SIZE, (short) 0);
+        Arrays.fill(gfx, i * ROWS, (i + 1) * ROWS, 0L);
+        indexRegister[i] = 0;
+        PC[i] = 0x200;
+        stackPointer[i] = 0;
+        delayTimer[i] = 0;
+        soundTimer[i] = 0;
+        keys[i] = 0;
+        // the new episode's stream is seeded by a draw from the old one, so it neither
+        // repeats nor continues it
+        random[i] = SplitMix64.mix(random[i] += SplitMix64.GAMMA);
+        rewards[i] = 0f;
+        dones[i] = false;
+        return gfx;
+    }
+
+    public long[] resetAll() {
+        for (int i = 0; i < instances; i++) {
+            reset(i);
+        }
+        return gfx;
+    }
+
+    // actions[i] is the mask of keys held by instance i for this frame; returns the observations
+    public long[] step(int[] actions) {
+        if (actions.length < instances) {
+            throw new IllegalArgumentException("Need " + instances + " actions, got " + actions.length);
+        }
+        System.arraycopy(actions, 0, keys, 0, instances);
+        if (slices.length == 1) {
+            slices[0].compute();
+        } else {
+            step.reinitialize();
+            pool.invoke(step);
+        }
+        return gfx;
+    }
+
+    private final class Step extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        protected void compute() {
+            for (Slice slice : slices) {
+                slice.reinitialize();
+            }
+            invokeAll(slices);
+        }
+    }
+
+    private final class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            for (int i = from; i < to; i++) {
+                runFrame(i);
+                rewards[i] = rewardFunction.reward(BatchEnvironment.this, i);
+                dones[i] = doneCondition.isDone(BatchEnvironment.this, i);
+            }
+        }
+    }
+
+    // the same instructions as Chip8CPU, in the same statement order so register
+    // aliasing with VF gives the same results
+    private void runFrame(int i) {
+        final byte[] memory = this.memory;
+        final byte[] V = this.V;
+        final long[] gfx = this.gfx;
+        int base = i * MEMORY_SIZE;
+        int v = i * REGISTERS;
+        int g = i * ROWS;
+        int s = i * STACK_SIZE;
+        int VF = v + 15;
+        int pc = PC[i];
+        int I = indexRegister[i];
+        int sp = stackPointer[i];
+
+        for (int cycle = 0; cycle < cyclesPerFrame; cycle++) {
+            int opcode = (memory[base + (pc & 0xFFF)] & 0xFF) << 8 | (memory[base + ((pc + 1) & 0xFFF)] & 0xFF);
+            int x = (opcode >> 8) & 0xF;
+            int X = v + x;
+            int Y = v + ((opcode >> 4) & 0xF);
+            int KK = opcode & 0xFF;
+            int NNN = opcode & 0xFFF;
+            switch (opcode >>> 12) {
+                case 0x0:
+                    if (opcode == 0x00E0) {
+                        Arrays.fill(gfx, g, g + ROWS, 0L);
+                        pc += 2;
+                    } else if (opcode == 0x00EE) {
+                        sp--;
+                        pc = stack[s + (sp & 0xF)] + 2;
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                case 0x1:
+                    pc = NNN;
+                    break;
+                case 0x2:
+                    stack[s + (sp & 0xF)] = (short) pc;
+                    sp++;
+                    pc = NNN;
+                    break;
+                case 0x3:
+                    pc += (V[X] & 0xFF) == KK ? 4 : 2;
+                    break;
+                case 0x4:
+                    pc += (V[X] & 0xFF) != KK ? 4 : 2;
+                    break;
+                case 0x5:
+                    pc += (opcode & 0xF) == 0 && V[X] == V[Y] ? 4 : 2;
+                    break;
+                case 0x6:
+                    V[X] = (byte) KK;
+                    pc += 2;
+                    break;
+                case 0x7:
+                    V[X] += KK;
+                    pc += 2;
+                    break;
+                case 0x8:
+                    arithmetic(opcode & 0xF, X, Y, VF);
+                    pc += 2;
+                    break;
+                case 0x9:
+                    pc += (opcode & 0xF) == 0 && V[X] != V[Y] ? 4 : 2;
+                    break;
+                case 0xA:
+                    I = NNN;
+                    pc += 2;
+                    break;
+                case 0xB:
+                    pc = NNN + (V[v] & 0xFF);
+                    break;
+                case 0xC:
+                    V[X] = (byte) (nextRandom(i) & KK);
+                    pc += 2;
+                    break;
+                case 0xD: {
+                    int xOrigin = V[X] & 0xFF;
+                    int yOrigin = V[Y] & 0xFF;
+                    V[VF] = 0;
+                    if (xOrigin < 64) {
+                        for (int h = 0; h < (opcode & 0xF); h++) {
+                            int y = yOrigin + h;
+                            if (y < ROWS) {
+                                long row = ((long) (memory[base + ((I + h) & 0xFFF)] & 0xFF) << 56) >>> xOrigin;
+                                if ((gfx[g + y] & row) != 0) {
+                                    V[VF] = 1;
+                                }
+                                gfx[g + y] ^= row;
+                            }
+                        }
+                    }
+                    pc += 2;
+                    break;
+                }
+                case 0xE: {
+                    int key = V[X] & 0xFF;
+                    boolean pressed = key < 16 && ((keys[i] >>> key) & 1) != 0;
+                    if (KK == 0x9E) {
+                        pc += pressed ? 4 : 2;
+                    } else if (KK == 0xA1) {
+                        pc += pressed ? 2 : 4;
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                }
+                case 0xF:
+                    switch (KK) {
+                        case 0x07:
+                            V[X] = (byte) delayTimer[i];
+                            break;
+                        case 0x0A:
+                            // waits on this instruction until a key is held, then takes the highest one
+                            if (keys[i] == 0) {
+                                continue;
+                            }
+                            V[X] = (byte) (31 - Integer.numberOfLeadingZeros(keys[i]));
+                            keys[i] = 0;
+                            break;
+                        case 0x15:
+                            delayTimer[i] = V[X] & 0xFF;
+                            break;
+                        case 0x18:
+                            soundTimer[i] = V[X] & 0xFF;
+                            break;
+                        case 0x1E:
+                            I += V[X] & 0xFF;
+                            break;
+                        case 0x29:
+                            I = (V[X] & 0xFF) * 5;
+                            break;
+                        case 0x33: {
+                            int value = V[X] & 0xFF;
+                            memory[base + (I & 0xFFF)] = (byte) (value / 100);
+                            memory[base + ((I + 1) & 0xFFF)] = (byte) ((value % 100) / 10);
+                            memory[base + ((I + 2) & 0xFFF)] = (byte) ((value % 100) % 10);
+                            break;
+                        }
+                        case 0x55:
+                            for (int r = 0; r <= x; r++) {
+                                memory[base + ((I + r) & 0xFFF)] = V[v + r];
+                            }
+                            break;
+                        case 0x65:
+                            for (int r = 0; r <= x; r++) {
+                                V[v + r] = memory[base + ((I + r) & 0xFFF)];
+                            }
+                            break;
+                    }
+                    pc += 2;
+                    break;
+            }
+        }
+
+        PC[i] = pc;
+        indexRegister[i] = I;
+        stackPointer[i] = sp;
+        if (delayTimer[i] > 0) {
+            delayTimer[i]--;
+        }
+        if (soundTimer[i] > 0) {
+            soundTimer[i]--;
+        }
+    }
+
+    private void arithmetic(int operation, int X, int Y, int VF) {
+        final byte[] V = this.V;
+        switch (operation) {
+            case 0x0:
+                V[X] = V[Y];
+                break;
+            case 0x1:
+                V[X] |= V[Y];
+                break;
+            case 0x2:
+                V[X] &= V[Y];
+                break;
+            case 0x3:
+                V[X] ^= V[Y];
+                break;
+            case 0x4: {
+                int result = (V[X] & 0xFF) + (V[Y] & 0xFF);
+                V[VF] = (byte) (result >> 8);
+                V[X] = (byte) result;
+                break;
+            }
+            case 0x5:
+                V[VF] = (byte) ((V[Y] & 0xFF) > (V[X] & 0xFF) ? 0 : 1);
+                V[X] = (byte) (V[X] - V[Y]);
+                break;
+            case 0x6:
+                V[VF] = (byte) (V[X] & 0x01);
+                V[X] = (byte) ((V[X] & 0xFF) >> 1);
+                break;
+            case 0x7: {
+                int vx = V[X] & 0xFF;
+                int vy = V[Y] & 0xFF;
+                V[VF] = (byte) (vx > vy ? 0 : 1);
+                V[X] = (byte) (vy - vx);
+                break;
+            }
+            case 0xE:
+                V[VF] = (byte) ((V[X] & 0xFF) >> 7);
+                V[X] = (byte) (V[X] << 1);
+                break;
+        }
+    }
+
+    // one independent stream per instance
+    private int nextRandom(int i) {
+        return (int) SplitMix64.mix(random[i] += SplitMix64.GAMMA) & 0xFF;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    public int getCyclesPerFrame() {
+        return cyclesPerFrame;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // framebuffers of all instances, 32 rows per instance with pixel x at bit 63 - x
+    public long[] getObservations() {
+        return gfx;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public void setRewardFunction(RewardFunction rewardFunction) {
+        this.rewardFunction = rewardFunction;
+    }
+
+    public void setDoneCondition(DoneCondition doneCondition) {
+        this.doneCondition = doneCondition;
+    }
+
+    public int getMemory(int instance, int address) {
+        return memory[instance * MEMORY_SIZE + (address & 0xFFF)] & 0xFF;
+    }
+
+    public int getRegister(int instance, int index) {
+        return V[instance * REGISTERS + index] & 0xFF;
+    }
+
+    public int getIndexRegister(int instance) {
+        return indexRegister[instance];
+    }
+
+    public int getPC(int instance) {
+        return PC[instance];
+    }
+
+    public int getStackPointer(int instance) {
+        return stackPointer[instance];
+    }
+
+    public int getDelayTimer(int instance) {
+        return delayTimer[instance];
+    }
+
+    public int getSoundTimer(int instance) {
+        return soundTimer[instance];
+    }
+
+    public long getGFXRow(int instance, int y) {
+        return gfx[instance * ROWS + y];
+    }
+}
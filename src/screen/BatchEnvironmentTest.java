@@ -0,0 +1,182 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class BatchEnvironmentTest {
+
+    private static byte[] assemble(int[] program) {
+        byte[] data = new byte[program.length * 2];
+        for (int i = 0; i < program.length; i++) {
+            data[2 * i] = (byte) (program[i] >> 8);
+            data[2 * i + 1] = (byte) program[i];
+        }
+        return data;
+    }
+
+    private static void assertSameState(Chip8CPU expected, BatchEnvironment actual, int instance) {
+        assertEquals(expected.getPC(), actual.getPC(instance));
+        assertEquals(expected.getIndexRegister(), actual.getIndexRegister(instance));
+        assertEquals(expected.getStackPointer(), actual.getStackPointer(instance));
+        assertEquals(expected.getDelayTimer(), actual.getDelayTimer(instance));
+        assertEquals(expected.getSoundTimer(), actual.getSoundTimer(instance));
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected.getVRegisterAtIndex(i), actual.getRegister(instance, i));
+        }
+        for (int a = 0; a < 4096; a++) {
+            assertEquals(expected.getMemoryAtIndex(a) & 0xFF, actual.getMemory(instance, a));
+        }
+        for (int y = 0; y < 32; y++) {
+            assertEquals(expected.getGFXRow(y), actual.getGFXRow(instance, y));
+        }
+    }
+
+    @Test
+    public void testMatchesInterpreterOnRandomPrograms() {
+        Random random = new Random(15);
+        for (int program = 0; program < 100; program++) {
+            byte[] rom = assemble(JitEngineTest.randomProgram(random, 64));
+            BatchEnvironment environment = new BatchEnvironment(rom, 3, 1 + random.nextInt(20));
+            Chip8CPU[] reference = new Chip8CPU[3];
+            for (int i = 0; i < 3; i++) {
+                reference[i] = new Chip8CPU();
+                reference[i].initialize();
+                reference[i].loadROM(rom);
+            }
+
+            int[] actions = new int[3];
+            for (int frame = 0; frame < 30; frame++) {
+                environment.step(actions);
+                for (int i = 0; i < 3; i++) {
+                    new Interpreter(reference[i]).run(environment.getCyclesPerFrame());
+                    reference[i].updateTimers();
+                    assertSameState(reference[i], environment, i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeysAndCalls() {
+        int[] program = {
+            0x2210,         // 200: call 210
+            0xF10A,         // 202: wait for key into V1
+            0xE19E,         // 204: skip if V1 held (it was just released)
+            0x7201,         // 206: V2 += 1
+            0x1206,         // 208: loop
+            0x0000,         // 20A
+            0x0000,         // 20C
+            0x0000,         // 20E
+            0x6305,         // 210: V3 = 5
+            0x00EE,         // 212: return
+        };
+        BatchEnvironment environment = new BatchEnvironment(assemble(program), 2, 6);
+        environment.step(new int[] {0, 1 << 7});
+        // instance 0 is still waiting, instance 1 took key 7 and runs the loop
+        assertEquals(environment.getPC(0), 0x202);
+        assertEquals(environment.getRegister(0, 3), 5);
+        assertEquals(environment.getRegister(1, 1), 7);
+        assertEquals(environment.getRegister(1, 2), 1);
+
+        environment.reset(1);
+        assertEquals(environment.getPC(1), 0x200);
+        assertEquals(environment.getRegister(1, 1), 0);
+    }
+
+    @Test
+    public void testRewardsAndParallelStep() {
+        // 200: V0 = random, 202: V1 += 1, 204: draw V1, V1 with font 0, 206: jump 200
+        int[] program = {0xC0FF, 0x7101, 0xD115, 0x1200};
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BatchEnvironment environment = new BatchEnvironment(assemble(program), 1000, 8, 42, pool);
+            BatchEnvironment sequential = new BatchEnvironment(assemble(program), 1000, 8, 42, new ForkJoinPool(1));
+            environment.setRewardFunction((env, i) -> env.getRegister(i, 1));
+            environment.setDoneCondition((env, i) -> env.getRegister(i, 1) >= 20);
+
+            int[] actions = new int[1000];
+            for (int frame = 0; frame < 10; frame++) {
+                environment.step(actions);
+                sequential.step(actions);
+            }
+            assertEquals(environment.getRewards()[999], 20f, 0f);
+            assertTrue(environment.getDones()[0]);
+            assertArrayEquals(environment.getObservations(), sequential.getObservations());
+
+            // instances draw from separate random streams
+            boolean differ = false;
+            for (int i = 1; i < 1000; i++) {
+                differ |= environment.getRegister(i, 0) != environment.getRegister(0, 0);
+                assertEquals(environment.getRegister(i, 0), sequential.getRegister(i, 0));
+            }
+            assertTrue(differ);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // 200..21E: VX = random for every X, 220: jump 200
+    private static byte[] drawingRom() {
+        int[] program = new int[17];
+        for (int x = 0; x < 16; x++) {
+            program[x] = 0xC0FF | x << 8;
+        }
+        program[16] = 0x1200;
+        return assemble(program);
+    }
+
+    private static int[] draws(BatchEnvironment environment, int instance) {
+        int[] draws = new int[16];
+        for (int x = 0; x < 16; x++) {
+            draws[x] = environment.getRegister(instance, x);
+        }
+        return draws;
+    }
+
+    // true when b is a starting offset draws into a, over at least four draws
+    private static boolean overlaps(int[] a, int[] b, int offset) {
+        for (int k = 0; k < a.length - offset; k++) {
+            if (a[k + offset] != b[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testRandomStreamsDoNotOverlap() {
+        BatchEnvironment environment = new BatchEnvironment(drawingRom(), 8, 17, 42L, ForkJoinPool.commonPool());
+        environment.step(new int[8]);
+
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                for (int offset = i == j ? 1 : 0; offset <= 12; offset++) {
+                    assertFalse(i + " and " + j + " at " + offset,
+                            overlaps(draws(environment, i), draws(environment, j), offset));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResetStartsNewStream() {
+        BatchEnvironment continued = new BatchEnvironment(drawingRom(), 1, 17, 42L, ForkJoinPool.commonPool());
+        BatchEnvironment reset = new BatchEnvironment(drawingRom(), 1, 17, 42L, ForkJoinPool.commonPool());
+        continued.step(new int[1]);
+        int[] first = draws(continued, 0);
+        continued.step(new int[1]);
+        reset.step(new int[1]);
+        reset.reset(0);
+        reset.step(new int[1]);
+
+        assertFalse(Arrays.equals(draws(reset, 0), first));
+        for (int offset = 0; offset <= 12; offset++) {
+            assertFalse(overlaps(draws(continued, 0), draws(reset, 0), offset));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package screen;
+
+final class Block {
+    final int start;
+    final int end;
+    final int[] opcodes;
+    final Instruction[] instructions;
+    final int length;
+    // address of a 1NNN fused into the trailing skip, or -1; when the skip is taken
+    // the jump is not executed and the block is one instruction shorter
+    final int conditionalJump;
+    // jumps back to its own start and only reads memory, timers and keys, so a pass
+    // that leaves the registers unchanged repeats identically until the next frame
+    final boolean idleLoop;
+    // ends in FX0A, which leaves PC where it is while no key is held
+    final boolean waitsForKey;
+    int executions;
+    CompiledBlock compiled;
+
+    Block(int start, int[] opcodes, Instruction[] instructions, int conditionalJump) {
+        this.start = start;
+        this.end = start + opcodes.length * 2;
+        this.opcodes = opcodes;
+        this.instructions = instructions;
+        this.length = opcodes.length;
+        this.conditionalJump = conditionalJump;
+        this.idleLoop = BlockEngine.isIdleLoop(start, opcodes);
+        this.waitsForKey = (opcodes[opcodes.length - 1] & 0xF0FF) == 0xF00A;
+    }
+}
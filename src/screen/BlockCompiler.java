@@ -0,0 +1,499 @@
+package screen;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+import screen.ClassBuilder.CodeBuilder;
+import screen.ClassBuilder.CodeBuilder.Label;
+
+// Translates a Block into JVM bytecode. V registers and I live in locals for the
+// whole block and are written back to the CPU only at exits and before calls into
+// Chip8CPU for the instructions that are not inlined (draws, BCD, loads/stores,
+// random, key checks, calls and returns). Locals hold the unsigned value of each
+// byte register.
+final class BlockCompiler {
+    static final String CPU_CLASS = "screen/Chip8CPU";
+    static final String BLOCK_DESCRIPTOR = "(Lscreen/Chip8CPU;)I";
+
+    // locals of a compiled block method
+    private static final int CPU = 0;
+    private static final int REGISTERS = 1;
+    private static final int INDEX = 2;
+    private static final int V0 = 3;
+    private static final int TEMP = 19;
+    static final int MAX_LOCALS = 20;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final boolean[] dirty = new boolean[16];
+    private boolean indexDirty;
+
+    static boolean canCompile(Block block) {
+        for (int opcode : block.opcodes) {
+            if (!OpcodeTable.isKnown(opcode)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    CompiledBlock compile(Block block) {
+        ClassBuilder builder = new ClassBuilder("screen/CompiledBlock$" + Integer.toHexString(block.start),
+                "java/lang/Object", "screen/CompiledBlock");
+        builder.defaultConstructor("java/lang/Object");
+        emitBlock(builder.method(ClassBuilder.ACC_PUBLIC | ClassBuilder.ACC_STATIC, "run", BLOCK_DESCRIPTOR, MAX_LOCALS), block);
+
+        CodeBuilder execute = builder.method(ClassBuilder.ACC_PUBLIC, "execute", BLOCK_DESCRIPTOR, 2);
+        execute.aload(1);
+        execute.invokestatic("screen/CompiledBlock$" + Integer.toHexString(block.start), "run", BLOCK_DESCRIPTOR);
+        execute.op(CodeBuilder.IRETURN);
+
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(builder.toByteArray(), true);
+            return (CompiledBlock) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not compile block at " + Integer.toHexString(block.start), e);
+        }
+    }
+
+    // emits a static (Lscreen/Chip8CPU;)I method body for the block
+    void emitBlock(CodeBuilder code, Block block) {
+        Arrays.fill(dirty, false);
+        indexDirty = false;
+
+        code.aload(CPU);
+        code.invokevirtual(CPU_CLASS, "registers", "()[B");
+        code.astore(REGISTERS);
+        boolean[] used = usedRegisters(block);
+        for (int r = 0; r < 16; r++) {
+            if (used[r]) {
+                reload(code, r);
+            }
+        }
+        code.aload(CPU);
+        code.invokevirtual(CPU_CLASS, "getIndexRegister", "()I");
+        code.istore(INDEX);
+
+        int length = block.length;
+        for (int i = 0; i < block.opcodes.length; i++) {
+            int opcode = block.opcodes[i];
+            int address = block.start + 2 * i;
+            if (emitInstruction(code, opcode, address, block, length)) {
+                return;
+            }
+        }
+        // the block ran into its length limit and falls through to the next address
+        exit(code, block.end, length);
+    }
+
+    // registers the block may read or write; VF and V0 are always included for flags and BNNN
+    private static boolean[] usedRegisters(Block block) {
+        boolean[] used = new boolean[16];
+        used[0] = true;
+        used[15] = true;
+        for (int opcode : block.opcodes) {
+            int X = (opcode & 0x0F00) >> 8;
+            used[X] = true;
+            used[(opcode & 0x00F0) >> 4] = true;
+            if ((opcode & 0xF0FF) == 0xF065) {
+                for (int r = 0; r <= X; r++) {
+                    used[r] = true;
+                }
+            }
+        }
+        return used;
+    }
+
+    // returns true once the instruction has ended the method
+    private boolean emitInstruction(CodeBuilder code, int opcode, int address, Block block, int length) {
+        int X = (opcode & 0x0F00) >> 8;
+        int Y = (opcode & 0x00F0) >> 4;
+        int N = opcode & 0x000F;
+        int KK = opcode & 0x00FF;
+        int NNN = opcode & 0x0FFF;
+
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                if (opcode == 0x00E0) {
+                    call(code, address, "OP00E0", "()V");
+                    return false;
+                }
+                flush(code);
+                call(code, address, "OP00EE", "()V");
+                exit(code, -1, length);
+                return true;
+            case 0x1000:
+                exit(code, NNN, length);
+                return true;
+            case 0x2000:
+                flush(code);
+                code.aload(CPU);
+                code.push(address);
+                code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+                code.aload(CPU);
+                code.push(NNN);
+                code.invokevirtual(CPU_CLASS, "OP2NNN", "(I)V");
+                exit(code, -1, length);
+                return true;
+            case 0x3000:
+                code.iload(V0 + X);
+                code.push(KK);
+                skip(code, CodeBuilder.IF_ICMPNE, address, block, length);
+                return true;
+            case 0x4000:
+                code.iload(V0 + X);
+                code.push(KK);
+                skip(code, CodeBuilder.IF_ICMPEQ, address, block, length);
+                return true;
+            case 0x5000:
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                skip(code, CodeBuilder.IF_ICMPNE, address, block, length);
+                return true;
+            case 0x6000:
+                code.push(KK);
+                store(code, X);
+                return false;
+            case 0x7000: {
+                Label done = code.label();
+                code.iload(V0 + X);
+                code.push(KK);
+                code.op(CodeBuilder.IADD);
+                store(code, X);
+                code.iload(V0 + X);
+                code.push(256);
+                code.jump(CodeBuilder.IF_ICMPLT, done);
+                code.iload(V0 + X);
+                code.push(256);
+                code.op(CodeBuilder.ISUB);
+                store(code, X);
+                code.mark(done);
+                return false;
+            }
+            case 0x8000:
+                emitArithmetic(code, opcode & 0x000F, X, Y);
+                return false;
+            case 0x9000:
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                skip(code, CodeBuilder.IF_ICMPEQ, address, block, length);
+                return true;
+            case 0xA000:
+                code.push(NNN);
+                code.istore(INDEX);
+                indexDirty = true;
+                return false;
+            case 0xB000:
+                // indirect jump: leave the compiled code and let the engine dispatch the target
+                flush(code);
+                code.aload(CPU);
+                code.push(NNN);
+                code.iload(V0);
+                code.op(CodeBuilder.IADD);
+                code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+                exit(code, -1, length);
+                return true;
+            case 0xC000:
+                flush(code);
+                code.aload(CPU);
+                code.push(address);
+                code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+                code.aload(CPU);
+                code.push(X);
+                code.push(KK);
+                code.invokevirtual(CPU_CLASS, "OPCXKK", "(II)V");
+                reload(code, X);
+                return false;
+            case 0xD000:
+                flush(code);
+                code.aload(CPU);
+                code.push(address);
+                code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+                code.aload(CPU);
+                code.push(X);
+                code.push(Y);
+                code.push(N);
+                code.invokevirtual(CPU_CLASS, "OPDXYN", "(III)V");
+                reload(code, 15);
+                return false;
+            case 0xE000:
+                flush(code);
+                call(code, address, KK == 0x9E ? "OPEX9E" : "OPEXA1", X);
+                if (block.conditionalJump == address + 2) {
+                    // the CPU has already skipped or not; take the fused jump if it did not
+                    Label skipped = code.label();
+                    code.aload(CPU);
+                    code.invokevirtual(CPU_CLASS, "getPC", "()I");
+                    code.push(address + 2);
+                    code.jump(CodeBuilder.IF_ICMPNE, skipped);
+                    exit(code, block.opcodes[block.opcodes.length - 1] & 0x0FFF, length);
+                    code.mark(skipped);
+                    exit(code, -1, length - 1);
+                } else {
+                    exit(code, -1, length);
+                }
+                return true;
+            default:
+                return emitMisc(code, KK, X, address, length);
+        }
+    }
+
+    private boolean emitMisc(CodeBuilder code, int KK, int X, int address, int length) {
+        switch (KK) {
+            case 0x07:
+                code.aload(CPU);
+                code.invokevirtual(CPU_CLASS, "getDelayTimer", "()I");
+                code.push(255);
+                code.op(CodeBuilder.IAND);
+                store(code, X);
+                return false;
+            case 0x0A:
+                flush(code);
+                call(code, address, "OPFX0A", X);
+                exit(code, -1, length);
+                return true;
+            case 0x15:
+                code.aload(CPU);
+                code.iload(V0 + X);
+                code.invokevirtual(CPU_CLASS, "setDelayTimer", "(I)V");
+                return false;
+            case 0x18:
+                code.aload(CPU);
+                code.iload(V0 + X);
+                code.invokevirtual(CPU_CLASS, "setSoundTimer", "(I)V");
+                return false;
+            case 0x1E:
+                code.iload(INDEX);
+                code.iload(V0 + X);
+                code.op(CodeBuilder.IADD);
+                code.istore(INDEX);
+                indexDirty = true;
+                return false;
+            case 0x29:
+                code.iload(V0 + X);
+                code.push(5);
+                code.op(CodeBuilder.IMUL);
+                code.istore(INDEX);
+                indexDirty = true;
+                code.aload(CPU);
+                code.push(1);
+                code.invokevirtual(CPU_CLASS, "setVF", "(Z)V");
+                return false;
+            case 0x33:
+                flush(code);
+                call(code, address, "OPFX33", X);
+                exit(code, -1, length);
+                return true;
+            case 0x55:
+                flush(code);
+                call(code, address, "OPFX55", X);
+                exit(code, -1, length);
+                return true;
+            default:
+                flush(code);
+                call(code, address, "OPFX65", X);
+                for (int r = 0; r <= X; r++) {
+                    reload(code, r);
+                }
+                return false;
+        }
+    }
+
+    // mirrors the statement order of the OP8XYn handlers, including VF being
+    // written before VX is read back when X is F
+    private void emitArithmetic(CodeBuilder code, int operation, int X, int Y) {
+        Label otherwise = code.label();
+        Label done = code.label();
+        switch (operation) {
+            case 0x0:
+                code.iload(V0 + Y);
+                store(code, X);
+                break;
+            case 0x1:
+            case 0x2:
+            case 0x3:
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                code.op(operation == 0x1 ? CodeBuilder.IOR : operation == 0x2 ? CodeBuilder.IAND : CodeBuilder.IXOR);
+                store(code, X);
+                break;
+            case 0x4:
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                code.op(CodeBuilder.IADD);
+                code.istore(TEMP);
+                code.iload(TEMP);
+                code.push(255);
+                code.jump(CodeBuilder.IF_ICMPLE, otherwise);
+                code.push(1);
+                store(code, 15);
+                code.iload(TEMP);
+                code.push(256);
+                code.op(CodeBuilder.ISUB);
+                code.push(255);
+                code.op(CodeBuilder.IAND);
+                store(code, X);
+                code.jump(CodeBuilder.GOTO, done);
+                code.mark(otherwise);
+                code.push(0);
+                store(code, 15);
+                code.iload(TEMP);
+                code.push(255);
+                code.op(CodeBuilder.IAND);
+                store(code, X);
+                code.mark(done);
+                break;
+            case 0x5:
+                code.iload(V0 + Y);
+                code.iload(V0 + X);
+                code.jump(CodeBuilder.IF_ICMPLE, otherwise);
+                code.push(0);
+                store(code, 15);
+                code.push(256);
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                code.op(CodeBuilder.ISUB);
+                code.op(CodeBuilder.IADD);
+                code.push(255);
+                code.op(CodeBuilder.IAND);
+                store(code, X);
+                code.jump(CodeBuilder.GOTO, done);
+                code.mark(otherwise);
+                code.push(1);
+                store(code, 15);
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                code.op(CodeBuilder.ISUB);
+                code.push(255);
+                code.op(CodeBuilder.IAND);
+                store(code, X);
+                code.mark(done);
+                break;
+            case 0x6:
+                code.iload(V0 + X);
+                code.push(1);
+                code.op(CodeBuilder.IAND);
+                store(code, 15);
+                code.iload(V0 + X);
+                code.push(1);
+                code.op(CodeBuilder.ISHR);
+                store(code, X);
+                break;
+            case 0x7:
+                code.iload(V0 + Y);
+                code.iload(V0 + X);
+                code.op(CodeBuilder.ISUB);
+                code.istore(TEMP);
+                code.iload(V0 + X);
+                code.iload(V0 + Y);
+                code.jump(CodeBuilder.IF_ICMPLE, otherwise);
+                code.push(0);
+                store(code, 15);
+                code.iload(TEMP);
+                code.push(256);
+                code.op(CodeBuilder.IADD);
+                store(code, X);
+                code.jump(CodeBuilder.GOTO, done);
+                code.mark(otherwise);
+                code.push(1);
+                store(code, 15);
+                code.iload(TEMP);
+                store(code, X);
+                code.mark(done);
+                break;
+            default:
+                code.iload(V0 + X);
+                code.push(7);
+                code.op(CodeBuilder.ISHR);
+                store(code, 15);
+                code.iload(V0 + X);
+                code.push(1);
+                code.op(CodeBuilder.ISHL);
+                code.push(255);
+                code.op(CodeBuilder.IAND);
+                store(code, X);
+        }
+    }
+
+    // the comparison operands are on the stack; notTaken branches when the skip does not happen
+    private void skip(CodeBuilder code, int notTaken, int address, Block block, int length) {
+        Label fallThrough = code.label();
+        code.jump(notTaken, fallThrough);
+        boolean fusedJump = block.conditionalJump == address + 2;
+        exit(code, address + 4, fusedJump ? length - 1 : length);
+        code.mark(fallThrough);
+        if (fusedJump) {
+            exit(code, block.opcodes[block.opcodes.length - 1] & 0x0FFF, length);
+        } else {
+            exit(code, address + 2, length);
+        }
+    }
+
+    private void store(CodeBuilder code, int register) {
+        code.istore(V0 + register);
+        dirty[register] = true;
+    }
+
+    private void reload(CodeBuilder code, int register) {
+        code.aload(REGISTERS);
+        code.push(register);
+        code.op(CodeBuilder.BALOAD);
+        code.push(255);
+        code.op(CodeBuilder.IAND);
+        code.istore(V0 + register);
+        dirty[register] = false;
+    }
+
+    // writes dirty locals back without forgetting them, so both sides of a branch can flush
+    private void writeBack(CodeBuilder code) {
+        for (int r = 0; r < 16; r++) {
+            if (dirty[r]) {
+                code.aload(REGISTERS);
+                code.push(r);
+                code.iload(V0 + r);
+                code.op(CodeBuilder.BASTORE);
+            }
+        }
+        if (indexDirty) {
+            code.aload(CPU);
+            code.iload(INDEX);
+            code.invokevirtual(CPU_CLASS, "setIndexRegister", "(I)V");
+        }
+    }
+
+    private void flush(CodeBuilder code) {
+        writeBack(code);
+        Arrays.fill(dirty, false);
+        indexDirty = false;
+    }
+
+    private void call(CodeBuilder code, int address, String method, String descriptor) {
+        code.aload(CPU);
+        code.push(address);
+        code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+        code.aload(CPU);
+        code.invokevirtual(CPU_CLASS, method, descriptor);
+    }
+
+    private void call(CodeBuilder code, int address, String method, int X) {
+        code.aload(CPU);
+        code.push(address);
+        code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+        code.aload(CPU);
+        code.push(X);
+        code.invokevirtual(CPU_CLASS, method, "(I)V");
+    }
+
+    // PC of -1 means the CPU has already set it
+    private void exit(CodeBuilder code, int PC, int executed) {
+        writeBack(code);
+        if (PC >= 0) {
+            code.aload(CPU);
+            code.push(PC);
+            code.invokevirtual(CPU_CLASS, "setPC", "(I)V");
+        }
+        code.push(executed);
+        code.op(CodeBuilder.IRETURN);
+    }
+}
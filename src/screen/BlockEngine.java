@@ -0,0 +1,274 @@
+package screen;
+
+import java.util.Arrays;
+
+public class BlockEngine implements ExecutionEngine {
+    static final int MAX_BLOCK_LENGTH = 32;
+    private static final int MAX_BLOCK_BYTES = MAX_BLOCK_LENGTH * 2;
+
+    final Chip8CPU CPU;
+    private final Block[] blocks = new Block[4096];
+    // number of cached blocks covering each address
+    private final short[] coverage = new short[4096];
+    private boolean idleSkipping = true;
+    private long idleInstructions;
+    // registers before the last pass through an idle loop
+    private final byte[] idleRegisters = new byte[16];
+    private int idleIndex;
+    private boolean idleVF;
+
+    public BlockEngine(Chip8CPU CPU) {
+        this.CPU = CPU;
+        CPU.setMemoryWatcher(this::memoryWritten);
+    }
+
+    public int run(int budget) {
+        int executed = 0;
+        while (executed < budget) {
+            Block block = lookup(CPU.getPC());
+            if (block == null) {
+                CPU.emulateCPUCycle();
+                executed++;
+                continue;
+            }
+
+            OpcodeCounts counts = CPU.getOpcodeCounts();
+            ExecutionProfile profile = CPU.getProfile();
+            if (block.length <= budget - executed) {
+                // instrumented runs see every pass, so the counts stay per instruction
+                boolean skippable = idleSkipping && counts == null && profile == null;
+                boolean idle = block.idleLoop && skippable;
+                if (idle) {
+                    saveIdleState();
+                }
+                int ran = execute(block);
+                // counted here rather than in execute() so compiled blocks are counted too;
+                // a taken skip leaves out the trailing jump, which is the last instruction
+                if (counts != null) {
+                    counts.count(block.opcodes, ran);
+                }
+                if (profile != null) {
+                    profile.executed(block.start, ran);
+                }
+                executed += ran;
+                if (idle && ran <= block.length && CPU.getPC() == block.start && isIdleState()) {
+                    // a fixed point: timers and keys only change between frames, so every
+                    // further pass this frame is the same and whole passes are skipped; the
+                    // leftover partial pass still runs so the frame ends where it would have
+                    int passes = (budget - executed) / ran;
+                    executed += passes * ran;
+                    idleInstructions += (long) passes * ran;
+                } else if (block.waitsForKey && skippable && CPU.isWaitingForKey()) {
+                    // FX0A repeats unchanged until the keys change at the next frame boundary
+                    idleInstructions += budget - executed;
+                    executed = budget;
+                }
+            } else {
+                // run the part of the block that fits and single-step the rest
+                Instruction[] instructions = block.instructions;
+                int ran = 0;
+                for (int i = 0; i < instructions.length && instructions[i].length <= budget - executed; i++) {
+                    instructions[i].execute(CPU);
+                    int length = instructions[i].length;
+                    if (i == instructions.length - 1) {
+                        length -= skippedJump(block);
+                    }
+                    executed += length;
+                    ran += length;
+                }
+                if (counts != null) {
+                    counts.count(block.opcodes, Math.min(ran, block.opcodes.length));
+                }
+                if (profile != null) {
+                    profile.executed(block.start, Math.min(ran, block.opcodes.length));
+                }
+                while (executed < budget) {
+                    CPU.emulateCPUCycle();
+                    executed++;
+                }
+            }
+        }
+        return executed;
+    }
+
+    private void saveIdleState() {
+        System.arraycopy(CPU.registers(), 0, idleRegisters, 0, idleRegisters.length);
+        idleIndex = CPU.getIndexRegister();
+        idleVF = CPU.isVF();
+    }
+
+    private boolean isIdleState() {
+        return Arrays.equals(CPU.registers(), idleRegisters) && CPU.getIndexRegister() == idleIndex
+                && CPU.isVF() == idleVF;
+    }
+
+    int execute(Block block) {
+        Instruction[] instructions = block.instructions;
+        for (int i = 0; i < instructions.length; i++) {
+            instructions[i].execute(CPU);
+        }
+        return block.length - skippedJump(block);
+    }
+
+    // 1 when the block's trailing skip was just taken, leaving out the jump fused into it
+    private int skippedJump(Block block) {
+        return block.conditionalJump >= 0 && CPU.getPC() == block.conditionalJump + 2 ? 1 : 0;
+    }
+
+    Block lookup(int PC) {
+        if (PC < 0 || PC + 1 >= blocks.length) {
+            return null;
+        }
+        Block block = blocks[PC];
+        if (block == null) {
+            block = decode(CPU, PC);
+            blocks[PC] = block;
+            for (int a = block.start; a < block.end; a++) {
+                coverage[a]++;
+            }
+        }
+        return block;
+    }
+
+    static Block decode(Chip8CPU CPU, int start) {
+        int[] decodeBuffer = new int[MAX_BLOCK_LENGTH];
+        int count = 0;
+        int address = start;
+        int conditionalJump = -1;
+        while (count < MAX_BLOCK_LENGTH && address + 1 < 4096) {
+            int opcode = fetch(CPU, address);
+            decodeBuffer[count++] = opcode;
+            address += 2;
+            if (endsBlock(opcode)) {
+                if (isSkip(opcode) && count < MAX_BLOCK_LENGTH && address + 1 < 4096) {
+                    int next = fetch(CPU, address);
+                    if ((next & 0xF000) == 0x1000 && (next & 0x0FFF) != address + 2) {
+                        decodeBuffer[count++] = next;
+                        conditionalJump = address;
+                    }
+                }
+                break;
+            }
+        }
+
+        int[] opcodes = Arrays.copyOf(decodeBuffer, count);
+        return new Block(start, opcodes, Superinstructions.fuse(opcodes, conditionalJump), conditionalJump);
+    }
+
+    private static int fetch(Chip8CPU CPU, int address) {
+        return (CPU.getMemoryAtIndex(address) & 0xFF) << 8 | (CPU.getMemoryAtIndex(address + 1) & 0xFF);
+    }
+
+    static boolean isSkip(int opcode) {
+        switch (opcode & 0xF000) {
+            case 0x3000:
+            case 0x4000:
+            case 0x5000:
+            case 0x9000:
+            case 0xE000:
+                return OpcodeTable.isKnown(opcode);
+            default:
+                return false;
+        }
+    }
+
+    // control flow, key waits and memory writes end a block, so a block can never
+    // overwrite its own remaining instructions
+    static boolean endsBlock(int opcode) {
+        if (!OpcodeTable.isKnown(opcode)) {
+            return true;
+        }
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                return opcode == 0x00EE;
+            case 0x1000:
+            case 0x2000:
+            case 0x3000:
+            case 0x4000:
+            case 0x5000:
+            case 0x9000:
+            case 0xB000:
+            case 0xE000:
+                return true;
+            case 0xF000:
+                int low = opcode & 0x00FF;
+                return low == 0x0A || low == 0x33 || low == 0x55;
+            default:
+                return false;
+        }
+    }
+
+    // a block whose last instruction jumps to its start and which writes nothing
+    // but registers; polling FX07 or EX9E/EXA1 until a timer or key changes
+    static boolean isIdleLoop(int start, int[] opcodes) {
+        int last = opcodes[opcodes.length - 1];
+        if ((last & 0xF000) != 0x1000 || (last & 0x0FFF) != start) {
+            return false;
+        }
+        for (int opcode : opcodes) {
+            if (!readsOnly(opcode)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // instructions whose only effects are on V, I and PC
+    static boolean readsOnly(int opcode) {
+        if (!OpcodeTable.isKnown(opcode)) {
+            return false;
+        }
+        switch (opcode & 0xF000) {
+            case 0x1000:
+            case 0x3000:
+            case 0x4000:
+            case 0x5000:
+            case 0x6000:
+            case 0x7000:
+            case 0x8000:
+            case 0x9000:
+            case 0xA000:
+            case 0xE000:
+                return true;
+            case 0xF000:
+                int low = opcode & 0x00FF;
+                return low == 0x07 || low == 0x1E || low == 0x29 || low == 0x65;
+            default:
+                return false;
+        }
+    }
+
+    public boolean isIdleSkipping() {
+        return idleSkipping;
+    }
+
+    public void setIdleSkipping(boolean idleSkipping) {
+        this.idleSkipping = idleSkipping;
+    }
+
+    // instructions that were accounted for without running them
+    public long getIdleInstructions() {
+        return idleInstructions;
+    }
+
+    void memoryWritten(int address, int length) {
+        int limit = Math.min(address + length, coverage.length);
+        for (int a = Math.max(0, address); a < limit; a++) {
+            if (coverage[a] != 0) {
+                invalidate(a);
+            }
+        }
+    }
+
+    private void invalidate(int address) {
+        for (int start = Math.max(0, address - MAX_BLOCK_BYTES + 1); start <= address; start++) {
+            Block block = blocks[start];
+            if (block != null && block.end > address) {
+                blocks[start] = null;
+                for (int a = block.start; a < block.end; a++) {
+                    coverage[a]--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // loops, calls, skip+jump pairs and set/index/draw sequences
+    private static final int[] GAME_LOOP = {
+        0x00E0,         // 200: CLS
+        0x6000,         // 202: V0 = 0
+        0x6105,         // 204: V1 = 5
+        0x6208,         // 206: V2 = 8
+        0xA000,         // 208: I = font 0
+        0xD125,         // 20A: draw V1, V2
+        0x7104,         // 20C: V1 += 4
+        0x2220,         // 20E: call 220
+        0x7001,         // 210: V0 += 1
+        0x3010,         // 212: skip if V0 == 16
+        0x1208,         // 214: jump 208
+        0x6305,         // 216: V3 = 5
+        0xA050,         // 218: I = 50
+        0xD235,         // 21A: draw V2, V3
+        0x1202,         // 21C: jump 202
+        0x0000,         // 21E
+        0x8314,         // 220: V3 += V1
+        0x8436,         // 222: V4 >>= 1
+        0x4400,         // 224: skip if V4 != 0
+        0x6480,         // 226: V4 = 80
+        0x00EE,         // 228: return
+    };
+
+    // overwrites the first instruction of its own loop with 6A55
+    private static final int[] SELF_MODIFYING = {
+        0x6A00,         // 200: VA = 0
+        0x7B01,         // 202: VB += 1
+        0x3B03,         // 204: skip if VB == 3
+        0x1200,         // 206: jump 200
+        0x606A,         // 208: V0 = 6A
+        0x6155,         // 20A: V1 = 55
+        0xA200,         // 20C: I = 200
+        0xF155,         // 20E: store V0..V1
+        0x6B00,         // 210: VB = 0
+        0x1200,         // 212: jump 200
+    };
+
+    // waits for the delay timer, then for key 5, then spins on a jump to itself
+    private static final int[] IDLE_WAITS = {
+        0x6003,         // 200: V0 = 3
+        0xF015,         // 202: delay = V0
+        0xF107,         // 204: V1 = delay
+        0x3100,         // 206: skip if V1 == 0
+        0x1204,         // 208: jump 204
+        0x7201,         // 20A: V2 += 1
+        0x6505,         // 20C: V5 = 5
+        0xE59E,         // 20E: skip if key V5 is held
+        0x120C,         // 210: jump 20C
+        0x7201,         // 212: V2 += 1
+        0x1214,         // 214: jump 214
+    };
+
+    private static Chip8CPU load(int[] program) {
+        byte[] data = new byte[program.length * 2];
+        for (int i = 0; i < program.length; i++) {
+            data[2 * i] = (byte) (program[i] >> 8);
+            data[2 * i + 1] = (byte) program[i];
+        }
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(data);
+        return CPU;
+    }
+
+    private static void assertSameState(Chip8CPU expected, Chip8CPU actual) {
+        assertEquals(expected.getPC(), actual.getPC());
+        assertEquals(expected.getIndexRegister(), actual.getIndexRegister());
+        assertEquals(expected.getStackPointer(), actual.getStackPointer());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected.getVRegisterAtIndex(i), actual.getVRegisterAtIndex(i));
+        }
+        assertEquals(expected.framebufferHash(), actual.framebufferHash());
+    }
+
+    @Test
+    public void testMatchesInterpreter() {
+        Chip8CPU reference = load(GAME_LOOP);
+        Chip8CPU target = load(GAME_LOOP);
+        ExecutionEngine interpreter = new Interpreter(reference);
+        ExecutionEngine engine = new BlockEngine(target);
+
+        // odd budgets force blocks to be split across calls
+        for (int budget = 1; budget < 60; budget++) {
+            assertEquals(budget, interpreter.run(budget));
+            assertEquals(budget, engine.run(budget));
+            assertSameState(reference, target);
+        }
+    }
+
+    @Test
+    public void testTakenSkipCountsOneInstruction() throws IOException {
+        // 200: V0 += 1, 202: skip if V0 == 3, 204: jump 200, 206: V0 = 0, 208: jump 200
+        int[] program = {0x7001, 0x3003, 0x1200, 0x6000, 0x1200};
+        AotCache cache = new AotCache(folder.newFolder("aot").toPath());
+        for (int tier = 0; tier < 3; tier++) {
+            Chip8CPU reference = load(program);
+            Chip8CPU target = load(program);
+            reference.setOpcodeCounts(new OpcodeCounts());
+            target.setOpcodeCounts(new OpcodeCounts());
+            ExecutionEngine interpreter = new Interpreter(reference);
+            BlockEngine engine = tier == 0 ? new BlockEngine(target)
+                    : tier == 1 ? new JitEngine(target, 1) : new AotEngine(target, cache);
+
+            // the 200 block is 3 instructions, or 2 when the skip is taken, so these budgets
+            // end both inside and right at the end of passes that take it
+            for (int i = 0; i < 60; i++) {
+                int budget = 1 + i % 7;
+                assertEquals(budget, interpreter.run(budget));
+                assertEquals(budget, engine.run(budget));
+                assertSameState(reference, target);
+                assertArrayEquals(reference.getOpcodeCounts().snapshot(), target.getOpcodeCounts().snapshot());
+            }
+        }
+    }
+
+    @Test
+    public void testSelfModifyingCode() {
+        Chip8CPU reference = load(SELF_MODIFYING);
+        Chip8CPU target = load(SELF_MODIFYING);
+        ExecutionEngine interpreter = new Interpreter(reference);
+        ExecutionEngine engine = new BlockEngine(target);
+
+        for (int i = 0; i < 20; i++) {
+            interpreter.run(7);
+            engine.run(7);
+            assertSameState(reference, target);
+        }
+        // the rewritten instruction is picked up instead of the cached block
+        assertEquals(0x6A, target.getMemoryAtIndex(0x200));
+        assertEquals(0x55, target.getVRegisterAtIndex(0xA));
+    }
+
+    @Test
+    public void testIdleLoopsSkipped() throws IOException {
+        AotCache cache = new AotCache(folder.newFolder("aot").toPath());
+        for (int tier = 0; tier < 3; tier++) {
+            Chip8CPU reference = load(IDLE_WAITS);
+            Chip8CPU target = load(IDLE_WAITS);
+            FrameScheduler interpreter = new FrameScheduler(reference, new Interpreter(reference), 6100, () -> {});
+            // compiled blocks take part from their first pass
+            BlockEngine engine = tier == 0 ? new BlockEngine(target)
+                    : tier == 1 ? new JitEngine(target, 1) : new AotEngine(target, cache);
+            FrameScheduler scheduler = new FrameScheduler(target, engine, 6100, () -> {});
+
+            // 101 or 102 instructions a frame never divide evenly into passes of 3 or 2
+            for (int frame = 0; frame < 12; frame++) {
+                if (frame == 8) {
+                    interpreter.setKeys(1 << 5);
+                    scheduler.setKeys(1 << 5);
+                }
+                interpreter.runFrame();
+                scheduler.runFrame();
+                assertSameState(reference, target);
+                assertEquals(reference.getDelayTimer(), target.getDelayTimer());
+            }
+            assertEquals(target.getVRegisterAtIndex(2), 2);
+            assertEquals(target.getPC(), 0x214);
+            assertTrue(engine.getIdleInstructions() > 1000);
+            assertEquals(scheduler.getCycles(), interpreter.getCycles());
+        }
+    }
+
+    @Test
+    public void testIdleLoopDetection() {
+        Chip8CPU target = load(IDLE_WAITS);
+        BlockEngine engine = new BlockEngine(target);
+        assertTrue(engine.lookup(0x204).idleLoop);
+        assertTrue(engine.lookup(0x20C).idleLoop);
+        assertTrue(engine.lookup(0x214).idleLoop);
+        // writes the delay timer, and does not jump back to its start
+        assertFalse(engine.lookup(0x200).idleLoop);
+        assertFalse(engine.lookup(0x20A).idleLoop);
+
+        // a counting loop qualifies but never reaches a fixed point, so nothing is skipped
+        Chip8CPU counting = load(new int[] {0x7B01, 0x1200});
+        BlockEngine countingEngine = new BlockEngine(counting);
+        assertTrue(countingEngine.lookup(0x200).idleLoop);
+        countingEngine.run(1000);
+        assertEquals(counting.getVRegisterAtIndex(0xB), 500 & 0xFF);
+        assertEquals(countingEngine.getIdleInstructions(), 0);
+    }
+
+    @Test
+    public void testKeyWaitEndsRun() {
+        Chip8CPU target = load(new int[] {0x6001, 0xF30A, 0x7401});
+        BlockEngine engine = new BlockEngine(target);
+        assertEquals(engine.run(1000), 1000);
+        assertEquals(target.getPC(), 0x202);
+        assertEquals(engine.getIdleInstructions(), 998);
+
+        target.setKeys(1 << 6);
+        engine.run(2);
+        assertEquals(target.getVRegisterAtIndex(3), 6);
+        assertEquals(target.getVRegisterAtIndex(4), 1);
+    }
+
+    @Test
+    public void testBlocksEndAtControlFlow() {
+        Chip8CPU target = load(GAME_LOOP);
+        BlockEngine engine = new BlockEngine(target);
+
+        Block block = engine.lookup(0x208);
+
+        // 208..214: I/draw fused, add, call
+        assertEquals(0x208, block.start);
+        assertEquals(0x210, block.end);
+        assertEquals(4, block.length);
+        assertEquals(3, block.instructions.length);
+
+        // skip fused with the jump it guards
+        block = engine.lookup(0x210);
+        assertEquals(0x216, block.end);
+        assertEquals(0x214, block.conditionalJump);
+    }
+}
@@ -241,10 +241,10 @@ public class CPUTest {
 
         target.OP8XYE();
 
-        // V[F] = MSB V[9] = 128
-        assertEquals(target.getVRegisterAtIndex(0xF), 128);
-        // V[9] = 212 << 1 = 424
-        assertEquals(target.getVRegisterAtIndex(9), 424);
+        // V[F] = MSB V[9] = 1
+        assertEquals(target.getVRegisterAtIndex(0xF), 1);
+        // V[9] = 212 << 1 = 424 -> 168 as V regs are 8bit
+        assertEquals(target.getVRegisterAtIndex(9), 168);
     }
 
     @Test
@@ -271,12 +271,12 @@ public class CPUTest {
     @Test
     public void testJumpV() { // BNNN
         target.setOpcode(0xB932);
-        target.setVRegisterAtIndex(0, 356);
+        target.setVRegisterAtIndex(0, 0xC4);
 
         target.OPBNNN();
 
-        // pc = opcode + V[0] = 0x932 + 356 = 2710
-        assertEquals(target.getPC(), 2710);
+        // pc = opcode + V[0] = 0x932 + 196 = 2550
+        assertEquals(target.getPC(), 2550);
     }
 
     @Test
@@ -309,6 +309,43 @@ public class CPUTest {
 
     }
 
+    @Test
+    public void testDrawSpriteClipped() { // DXYN at the right edge
+        target.setOpcode(0xD011);
+        target.setVRegisterAtIndex(0, 60);
+        target.setVRegisterAtIndex(1, 2);
+        target.setMemoryAtIndex(target.getIndexRegister(), 0xFF);
+
+        target.OPDXYN();
+        assertEquals(target.getGFXRow(2), 0xFL);
+        assertEquals(target.getVRegisterAtIndex(0xF), 0);
+
+        // drawing again erases the row and reports a collision
+        target.OPDXYN();
+        assertEquals(target.getGFXRow(2), 0L);
+        assertEquals(target.getVRegisterAtIndex(0xF), 1);
+    }
+
+    @Test
+    public void testDirtyRows() { // DXYN, 00E0
+        target.takeDirtyRows();
+        target.setOpcode(0xD012);
+        target.setVRegisterAtIndex(1, 5);
+        target.setMemoryAtIndex(target.getIndexRegister(), 0x80);
+        target.setMemoryAtIndex(target.getIndexRegister() + 1, 0x00);
+
+        // an empty sprite row changes nothing
+        target.OPDXYN();
+        assertEquals(target.takeDirtyRows(), 1 << 5);
+        assertEquals(target.getDirtyRows(), 0);
+
+        // clearing only touches rows that had pixels
+        target.OP00E0();
+        assertEquals(target.takeDirtyRows(), 1 << 5);
+        target.OP00E0();
+        assertEquals(target.takeDirtyRows(), 0);
+    }
+
     @Test
     public void testSkipKeyPressed() { // EX9E
         target.setOpcode(0xE49E);
@@ -444,4 +481,55 @@ public class CPUTest {
         assertEquals(target.getVRegisterAtIndex(1), 112);
         assertEquals(target.getVRegisterAtIndex(2), 197);
     }
+
+    @Test
+    public void testLoadROMBytes() {
+        target.loadROM(new byte[] {(byte) 0xC1, (byte) 0xFF, 0x12});
+
+        // ROM bytes come back unsigned
+        assertEquals(target.getMemoryAtIndex(0x200), 0xC1);
+        assertEquals(target.getMemoryAtIndex(0x201), 0xFF);
+        assertEquals(target.getMemoryAtIndex(0x202), 0x12);
+        assertEquals(target.getRomLength(), 3);
+    }
+
+    @Test
+    public void testKeyMask() {
+        target.setKeyAtIndex(3, 1);
+        target.setKeyAtIndex(0xC, 1);
+        target.setKeyAtIndex(3, 0);
+
+        assertEquals(target.getKeys(), 1 << 0xC);
+        assertEquals(target.getKeyAtIndex(0xC), 1);
+        assertEquals(target.getKeyAtIndex(3), 0);
+
+        // EXA1 with a register above F never sees a key held
+        target.setOpcode(0xE1A1);
+        target.setVRegisterAtIndex(1, 0x1C);
+        target.OPEXA1();
+        assertEquals(target.getPC(), 516);
+    }
+
+    @Test
+    public void testDecodeDispatch() {
+        target.setVRegisterAtIndex(2, 7);
+
+        target.decode(0x8124);
+
+        // V[1] = 0 + V[2] = 7, pc += 2 = 514
+        assertEquals(target.getVRegisterAtIndex(1), 7);
+        assertEquals(target.getPC(), 514);
+    }
+
+    @Test
+    public void testUnknownOpcode() {
+        int[] faulted = new int[1];
+        target.setFaultHandler((CPU, opcode) -> faulted[0] = opcode);
+
+        target.decode(0x8008);
+
+        // no 8XY8 instruction, pc untouched
+        assertEquals(faulted[0], 0x8008);
+        assertEquals(target.getPC(), 512);
+    }
 }
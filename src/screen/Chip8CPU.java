@@ -1,25 +1,50 @@
 package screen;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.util.Arrays;
-import java.util.Random;
 
 public class Chip8CPU {
+    private static final int STATE_MAGIC = 0x43385353;
+    private static final int STATE_VERSION = 2;
+    // magic, version, memory, registers, I, PC, opcode, stack, SP, timers, gfx, keys, ROM length, flags, RNG
+    public static final int STATE_SIZE = 4 + 2 + 4096 + 16 * 4 + 4 * 3 + 16 * 4 + 4 + 4 * 2 + 32 * 8 + 2 + 2 + 1 + 8;
+    // the last fetched opcode, which block and compiled engines do not keep up to date
+    static final int STATE_OPCODE_OFFSET = 4 + 2 + 4096 + 16 * 4 + 4 * 2;
+
     private int opcode;
-    private int[] memory = new int[4096];
-    private int[] VRegister = new int[16];
+    // one byte per cell and register; reads mask with 0xFF, so values stay 0-255
+    private final byte[] memory = new byte[4096];
+    private final byte[] VRegister = new byte[16];
     private int indexRegister;
     private int PC;
-    private int[][] gfx = new int[64][32];
+    // one row per long, pixel x at bit 63 - x
+    private long[] gfx = new long[32];
+    // bit y is set when framebuffer row y changed since the display last took it
+    private int dirtyRows;
+    // 00E0 and DXYN executed so far, read per frame by the flight recorder events
+    private int drawCalls;
     private int soundTimer;
     private int delayTimer;
-    private int[] stack = new int[16];
+    // return addresses fit in 12 bits
+    private final short[] stack = new short[16];
     private int stackPointer;
-    private int[] key = new int[16];
+    // bit i is set while key i is held
+    private int keys;
     private boolean VF;
-    private int[] fontSet = new int[] {
+    private FaultHandler faultHandler = FaultHandler.LOG_AND_SKIP;
+    private MemoryWatcher memoryWatcher;
+    // null unless executions are being counted per instruction kind
+    private OpcodeCounts opcodeCounts;
+    // null unless the profiler is counting executions and memory accesses per address
+    private ExecutionProfile profile;
+    private int romLength;
+    // CXKK draws from a splitmix64 stream that initialize() restarts from the seed
+    private long seed = System.nanoTime() * SplitMix64.GAMMA;
+    private long randomState;
+    private static final int[] FONT_SET = {
         0xF0, 0x90, 0x90, 0x90, 0xF0, // 0
         0x20, 0x60, 0x20, 0x20, 0x70, // 1
         0xF0, 0x10, 0xF0, 0x80, 0xF0, // 2
@@ -39,38 +64,59 @@ public class Chip8CPU {
     };
 
     public void initialize() {
-        Arrays.fill(memory, 0);
-        Arrays.fill(VRegister, 0);
-        Arrays.fill(stack, 0);
-        Arrays.fill(key, 0);
+        Arrays.fill(memory, (byte) 0);
+        Arrays.fill(VRegister, (byte) 0);
+        Arrays.fill(stack, (short) 0);
+        keys = 0;
         opcode = 0;
         indexRegister = 0;
         PC = 512;
         soundTimer = 0;
         delayTimer = 0;
         stackPointer = 0;
+        romLength = 0;
         VF = true;
+        dirtyRows = -1;
+        randomState = seed;
 
-        for (int i = 0; i < 80; ++i) {
-            memory[i] = fontSet[i];
+        for (int i = 0; i < FONT_SET.length; ++i) {
+            memory[i] = (byte) FONT_SET[i];
         }
+        memoryWritten(0, memory.length);
     }
 
     public void loadROM(String filePath) {
         Path path = Paths.get(filePath);
         try {
-            byte[] data = Files.readAllBytes(path);
-            for (int i = 0; i < data.length; i++) {
-                memory[i + 512] = data[i];
-            }
+            loadROM(Files.readAllBytes(path));
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    public void loadROM(byte[] data) {
+        System.arraycopy(data, 0, memory, 512, data.length);
+        romLength = data.length;
+        memoryWritten(512, data.length);
+    }
+
+    private void memoryWritten(int address, int length) {
+        if (memoryWatcher != null) {
+            memoryWatcher.memoryWritten(address, length);
+        }
+    }
+
+    byte[] registers() {
+        return VRegister;
+    }
+
+    void setMemoryWatcher(MemoryWatcher memoryWatcher) {
+        this.memoryWatcher = memoryWatcher;
+    }
+
     public void displayMemory() {
         for (int i = 0; i < 4096; i++) {
-            System.out.print(memory[i] + " ");
+            System.out.print((memory[i] & 0xFF) + " ");
             if (i%16==0 && i!=0) {
                 System.out.println();
             }
@@ -79,7 +125,13 @@ public class Chip8CPU {
 
     public void emulateCPUCycle() {
         opcode = fetchOpcode(PC);
-        decode(opcode);
+        if (opcodeCounts != null) {
+            opcodeCounts.count(opcode);
+        }
+        if (profile != null) {
+            profile.executed(PC);
+        }
+        OpcodeTable.get(opcode).execute(this);
     }
 
     private int fetchOpcode(int PC) {
@@ -87,136 +139,53 @@ public class Chip8CPU {
     }
 
     public void decode(int opcode) {
-        switch (opcode & 0xF000) {
-            case 0x0000:
-                switch (opcode & 0x000F) {
-                    case 0x0000:
-                        OP00E0();
-                        break;
-                    case 0x000E:
-                        OP00EE();
-                        break;
-                }
-                break;
-            case 0x1000:
-                OP1NNN();
-                break;
-            case 0x2000:
-                OP2NNN();
-                break;
-            case 0x3000:
-                OP3XKK();
-                break;
-            case 0x4000:
-                OP4XKK();
-                break;
-            case 0x5000:
-                OP5XY0();
-                break;
-            case 0x6000:
-                OP6XKK();
-                break;
-            case 0x7000:
-                OP7XKK();
-                break;
-            case 0x8000:
-                switch (opcode & 0xF00F) {
-                    case 0x8000:
-                        OP8XY0();
-                        break;
-                    case 0x8001:
-                        OP8XY1();
-                        break;
-                    case 0x8002:
-                        OP8XY2();
-                        break;
-                    case 0x8003:
-                        OP8XY3();
-                        break;
-                    case 0x8004:
-                        OP8XY4();
-                        break;
-                    case 0x8005:
-                        OP8XY5();
-                        break;
-                    case 0x8006:
-                        OP8XY6();
-                        break;
-                    case 0x8007:
-                        OP8XY7();
-                        break;
-                    case 0x800E:
-                        OP8XYE();
-                        break;
-                }
-                break;
-            case 0x9000:
-                OP9XY0();
-                break;
-            case 0xA000:
-                OPANNN();
-                break;
-            case 0xB000:
-                OPBNNN();
-                break;
-            case 0xC000:
-                OPCXKK();
-                break;
-            case 0xD000:
-                OPDXYN();
-                break;
-            case 0xE000:
-                switch (opcode & 0xF00F) {
-                    case 0xE00E:
-                        OPEX9E();
-                        break;
-                    case 0xE001:
-                        OPEXA1();
-                        break;
-                }
-                break;
-            case 0xF000:
-                switch (opcode & 0xF0FF) {
-                    case 0xF007:
-                        OPFX07();
-                        break;
-                    case 0xF00A:
-                        OPFX0A();
-                        break;
-                    case 0xF015:
-                        OPFX15();
-                        break;
-                    case 0xF018:
-                        OPFX18();
-                        break;
-                    case 0xF01E:
-                        OPFX1E();
-                        break;
-                    case 0xF029:
-                        OPFX29();
-                        break;
-                    case 0xF033:
-                        OPFX33();
-                        break;
-                    case 0xF055:
-                        OPFX55();
-                        break;
-                    case 0xF065:
-                        OPFX65();
-                        break;
-                }
-                break;
-            default:
-                System.out.println("ERROR: Unknown opcode");
+        if (opcodeCounts != null) {
+            opcodeCounts.count(opcode);
+        }
+        if (profile != null) {
+            profile.executed(PC);
         }
+        OpcodeTable.get(opcode).execute(this);
+    }
+
+    OpcodeCounts getOpcodeCounts() {
+        return opcodeCounts;
+    }
+
+    // set from the emulation thread, between frames
+    void setOpcodeCounts(OpcodeCounts opcodeCounts) {
+        this.opcodeCounts = opcodeCounts;
+    }
+
+    ExecutionProfile getProfile() {
+        return profile;
+    }
+
+    // set from the emulation thread, between frames
+    void setProfile(ExecutionProfile profile) {
+        this.profile = profile;
+    }
+
+    void fault(int opcode) {
+        faultHandler.unknownOpcode(this, opcode);
+    }
+
+    public FaultHandler getFaultHandler() {
+        return faultHandler;
+    }
+
+    public void setFaultHandler(FaultHandler faultHandler) {
+        this.faultHandler = faultHandler;
     }
 
     public void OP00E0() {
-        for (int x = 0; x < 64; x++) {
-            for (int y = 0; y < 32; y++) {
-                gfx[x][y] = 0;
+        for (int y = 0; y < gfx.length; y++) {
+            if (gfx[y] != 0) {
+                dirtyRows |= 1 << y;
             }
         }
+        Arrays.fill(gfx, 0L);
+        drawCalls++;
         PC += 2;
         VF = true;
     }
@@ -228,17 +197,29 @@ public class Chip8CPU {
     }
 
     public void OP1NNN() {
-        PC = opcode & 0x0FFF;
+        OP1NNN(opcode & 0x0FFF);
+    }
+
+    public void OP1NNN(int NNN) {
+        PC = NNN;
     }
 
     public void OP2NNN() {
-        stack[stackPointer] = PC;
+        OP2NNN(opcode & 0x0FFF);
+    }
+
+    public void OP2NNN(int NNN) {
+        stack[stackPointer] = (short) PC;
         stackPointer++;
-        PC = opcode & 0x0FFF;
+        PC = NNN;
     }
 
     public void OP3XKK() {
-        if (VRegister[(opcode & 0x0F00) >> 8] == (opcode & 0x00FF)) {
+        OP3XKK((opcode & 0x0F00) >> 8, opcode & 0x00FF);
+    }
+
+    public void OP3XKK(int X, int KK) {
+        if ((VRegister[X] & 0xFF) == KK) {
             PC += 4;
         } else {
             PC += 2;
@@ -246,7 +227,11 @@ public class Chip8CPU {
     }
 
     public void OP4XKK() {
-        if (VRegister[(opcode & 0x0F00) >> 8] != (opcode & 0x00FF)) {
+        OP4XKK((opcode & 0x0F00) >> 8, opcode & 0x00FF);
+    }
+
+    public void OP4XKK(int X, int KK) {
+        if ((VRegister[X] & 0xFF) != KK) {
             PC += 4;
         } else {
             PC += 2;
@@ -254,7 +239,11 @@ public class Chip8CPU {
     }
 
     public void OP5XY0() {
-        if (VRegister[(opcode & 0x0F00) >> 8] == VRegister[(opcode & 0x00F0) >> 4]) {
+        OP5XY0((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP5XY0(int X, int Y) {
+        if (VRegister[X] == VRegister[Y]) {
             PC += 4;
         } else {
             PC += 2;
@@ -262,99 +251,119 @@ public class Chip8CPU {
     }
 
     public void OP6XKK() {
-        VRegister[(opcode & 0x0F00) >> 8] = (opcode & 0x00FF);
+        OP6XKK((opcode & 0x0F00) >> 8, opcode & 0x00FF);
+    }
+
+    public void OP6XKK(int X, int KK) {
+        VRegister[X] = (byte) KK;
         PC += 2;
     }
 
     public void OP7XKK() {
-        int KK = (opcode & 0x00FF);
-        int X = (opcode & 0x0F00) >> 8;
-        int result = VRegister[X] + KK;
-        if (result >= 256) {
-            VRegister[X] = result - 256;
-        } else {
-            VRegister[X] = result;
-        }
+        OP7XKK((opcode & 0x0F00) >> 8, opcode & 0x00FF);
+    }
+
+    public void OP7XKK(int X, int KK) {
+        VRegister[X] += KK;
         PC += 2;
     }
 
     public void OP8XY0() {
-        VRegister[(opcode & 0x0F00) >> 8] = VRegister[(opcode & 0x00F0) >> 4];
+        OP8XY0((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY0(int X, int Y) {
+        VRegister[X] = VRegister[Y];
         PC += 2;
     }
 
     public void OP8XY1() {
-        VRegister[(opcode & 0x0F00) >> 8] |= VRegister[(opcode & 0x00F0) >> 4];
+        OP8XY1((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY1(int X, int Y) {
+        VRegister[X] |= VRegister[Y];
         PC += 2;
     }
 
     public void OP8XY2() {
-        VRegister[(opcode & 0x0F00) >> 8] &= VRegister[(opcode & 0x00F0) >> 4];
+        OP8XY2((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY2(int X, int Y) {
+        VRegister[X] &= VRegister[Y];
         PC += 2;
     }
 
     public void OP8XY3() {
-        VRegister[(opcode & 0x0F00) >> 8] ^= VRegister[(opcode & 0x00F0) >> 4];
+        OP8XY3((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY3(int X, int Y) {
+        VRegister[X] ^= VRegister[Y];
         PC += 2;
     }
 
     public void OP8XY4() {
-        int X = (opcode & 0x0F00) >> 8;
-        int Y = (opcode & 0x00F0) >> 4;
-        int result = VRegister[X] + VRegister[Y];
-        if (result > 255) {
-            VRegister[15] = 1;
-            VRegister[X] = (result - 256) & 0xFF;
-        } else {
-            VRegister[15] = 0;
-            VRegister[X] = result & 0xFF;
-        }
+        OP8XY4((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY4(int X, int Y) {
+        int result = (VRegister[X] & 0xFF) + (VRegister[Y] & 0xFF);
+        VRegister[15] = (byte) (result >> 8);
+        VRegister[X] = (byte) result;
         PC += 2;
     }
 
     public void OP8XY5() {
-        int X = (opcode & 0x0F00) >> 8;
-        int Y = (opcode & 0x00F0) >> 4;
-        if (VRegister[Y] > VRegister[X]) {
-            VRegister[15] = 0;
-            VRegister[X] = (256 + (VRegister[X] - VRegister[Y])) & 0xFF;
-        } else {
-            VRegister[15] = 1;
-            VRegister[X] = (VRegister[X] - VRegister[Y]) & 0xFF;
-        }
+        OP8XY5((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY5(int X, int Y) {
+        // VF is written first, so with X or Y = F the flag takes part in the result
+        VRegister[15] = (byte) ((VRegister[Y] & 0xFF) > (VRegister[X] & 0xFF) ? 0 : 1);
+        VRegister[X] = (byte) (VRegister[X] - VRegister[Y]);
         PC += 2;
     }
 
     public void OP8XY6() {
-        int X = (opcode & 0x0F00) >> 8;
-        VRegister[15] = VRegister[X] & 0x01;
-        VRegister[X] >>= 1;
+        OP8XY6((opcode & 0x0F00) >> 8);
+    }
+
+    public void OP8XY6(int X) {
+        VRegister[15] = (byte) (VRegister[X] & 0x01);
+        VRegister[X] = (byte) ((VRegister[X] & 0xFF) >> 1);
         PC += 2;
     }
 
     public void OP8XY7() {
-        int X = (opcode & 0x0F00) >> 8;
-        int Y = (opcode & 0x00F0) >> 4;
-        int result = VRegister[Y] - VRegister[X];
-        if (VRegister[X] > VRegister[Y]) {
-            VRegister[15] = 0;
-            VRegister[X] = result + 256;
-        } else {
-            VRegister[15] = 1;
-            VRegister[X] = result;
-        }
+        OP8XY7((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP8XY7(int X, int Y) {
+        int vx = VRegister[X] & 0xFF;
+        int vy = VRegister[Y] & 0xFF;
+        VRegister[15] = (byte) (vx > vy ? 0 : 1);
+        VRegister[X] = (byte) (vy - vx);
         PC += 2;
     }
 
     public void OP8XYE() {
-        int X = (opcode & 0x0F00) >> 8;
-        VRegister[15] = VRegister[X] >> 7;
-        VRegister[X] = VRegister[X] << 1;
+        OP8XYE((opcode & 0x0F00) >> 8);
+    }
+
+    public void OP8XYE(int X) {
+        VRegister[15] = (byte) ((VRegister[X] & 0xFF) >> 7);
+        VRegister[X] = (byte) (VRegister[X] << 1);
         PC += 2;
     }
 
     public void OP9XY0() {
-        if (VRegister[(opcode & 0x0F00) >> 8] != VRegister[(opcode & 0x00F0) >> 4]) {
+        OP9XY0((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4);
+    }
+
+    public void OP9XY0(int X, int Y) {
+        if (VRegister[X] != VRegister[Y]) {
             PC += 4;
         } else {
             PC += 2;
@@ -362,38 +371,57 @@ public class Chip8CPU {
     }
 
     public void OPANNN() {
-        indexRegister = (opcode & 0x0FFF);
+        OPANNN(opcode & 0x0FFF);
+    }
+
+    public void OPANNN(int NNN) {
+        indexRegister = NNN;
         PC += 2;
     }
 
     public void OPBNNN() {
-        PC = (opcode & 0x0FFF) + VRegister[0];
+        OPBNNN(opcode & 0x0FFF);
+    }
+
+    public void OPBNNN(int NNN) {
+        PC = NNN + (VRegister[0] & 0xFF);
     }
 
     public void OPCXKK() {
-        Random random = new Random();
-        int i = random.nextInt(256);
-        VRegister[(opcode & 0x0F00) >> 8] = i & (opcode & 0x00FF);
+        OPCXKK((opcode & 0x0F00) >> 8, opcode & 0x00FF);
+    }
+
+    public void OPCXKK(int X, int KK) {
+        int i = (int) SplitMix64.mix(randomState += SplitMix64.GAMMA) & 0xFF;
+        VRegister[X] = (byte) (i & KK);
         PC += 2;
     }
 
     public void OPDXYN() {
-        int X = VRegister[(opcode & 0x0F00) >> 8];
-        int Y = VRegister[(opcode & 0x00F0) >> 4];
-        int spriteHeight = opcode & 0x000F;
+        OPDXYN((opcode & 0x0F00) >> 8, (opcode & 0x00F0) >> 4, opcode & 0x000F);
+    }
+
+    public void OPDXYN(int X, int Y, int N) {
+        int xOrigin = VRegister[X] & 0xFF;
+        int yOrigin = VRegister[Y] & 0xFF;
         VRegister[15] = 0;
-        for (int h = 0; h < spriteHeight; h++) {
-            int pixel = memory[indexRegister + h];
-            for (int w = 0; w < 8; w++) {
-                if ((pixel & (0x80 >> w)) != 0) {
-                    int xCoordinate = X + w;
-                    int yCoordinate = Y + h;
-
-                    if (xCoordinate < 64 && yCoordinate < 32) {
-                        if (gfx[xCoordinate][yCoordinate] == 1) {
-                            VRegister[15] = 1;
-                        }
-                        gfx[xCoordinate][yCoordinate] ^= 1;
+        drawCalls++;
+        if (xOrigin < 64) {
+            if (profile != null && yOrigin < 32) {
+                // rows below the screen are never read
+                profile.read(indexRegister, Math.min(N, 32 - yOrigin));
+            }
+            for (int h = 0; h < N; h++) {
+                int yCoordinate = yOrigin + h;
+                if (yCoordinate < 32) {
+                    // sprite byte moved to column xOrigin; pixels past column 63 shift out
+                    long row = ((long) (memory[indexRegister + h] & 0xFF) << 56) >>> xOrigin;
+                    if ((gfx[yCoordinate] & row) != 0) {
+                        VRegister[15] = 1;
+                    }
+                    gfx[yCoordinate] ^= row;
+                    if (row != 0) {
+                        dirtyRows |= 1 << yCoordinate;
                     }
                 }
             }
@@ -403,7 +431,11 @@ public class Chip8CPU {
     }
 
     public void OPEX9E() {
-        if (key[VRegister[(opcode & 0x0F00) >> 8]] == 1) {
+        OPEX9E((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPEX9E(int X) {
+        if (isKeyHeld(VRegister[X] & 0xFF)) {
             PC += 4;
         } else {
             PC += 2;
@@ -411,76 +443,128 @@ public class Chip8CPU {
     }
 
     public void OPEXA1() {
-        if (key[VRegister[(opcode & 0x0F00) >> 8]] == 0) {
+        OPEXA1((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPEXA1(int X) {
+        if (!isKeyHeld(VRegister[X] & 0xFF)) {
             PC += 4;
         } else {
             PC += 2;
         }
     }
 
+    private boolean isKeyHeld(int index) {
+        return index < 16 && ((keys >>> index) & 1) != 0;
+    }
+
     public void OPFX07() {
-        VRegister[(opcode & 0x0F00) >> 8] = delayTimer;
+        OPFX07((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX07(int X) {
+        VRegister[X] = (byte) delayTimer;
         PC += 2;
     }
 
     public void OPFX0A() {
-        int X = (opcode & 0x0F00) >> 8;
-        boolean keyPressed = false;
-
-        for (int i = 0; i < 16; i++) {
-            if (key[i] == 1) {
-                VRegister[X] = i;
-                keyPressed = true;
-                key[i] = 0;
-            }
-        }
+        OPFX0A((opcode & 0x0F00) >> 8);
+    }
 
-        if (keyPressed) {
+    public void OPFX0A(int X) {
+        // the highest held key is taken and every held key counts as consumed
+        if (keys != 0) {
+            VRegister[X] = (byte) (31 - Integer.numberOfLeadingZeros(keys));
+            keys = 0;
             PC += 2;
         }
     }
 
+    // the next instruction is FX0A and no key is held, so running it changes nothing
+    // until the keys do
+    public boolean isWaitingForKey() {
+        return keys == 0 && PC + 1 < memory.length && (memory[PC] & 0xF0) == 0xF0 && memory[PC + 1] == 0x0A;
+    }
+
+    // nothing left for the timers to count down
+    public boolean isTimersIdle() {
+        return delayTimer == 0 && soundTimer == 0;
+    }
+
     public void OPFX15() {
-        delayTimer = VRegister[(opcode & 0x0F00) >> 8];
+        OPFX15((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX15(int X) {
+        delayTimer = VRegister[X] & 0xFF;
         PC += 2;
     }
 
     public void OPFX18() {
-        soundTimer = VRegister[(opcode & 0x0F00) >> 8];
+        OPFX18((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX18(int X) {
+        soundTimer = VRegister[X] & 0xFF;
         PC += 2;
     }
 
     public void OPFX1E() {
-        indexRegister += VRegister[(opcode & 0x0F00) >> 8];
+        OPFX1E((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX1E(int X) {
+        indexRegister += VRegister[X] & 0xFF;
         PC += 2;
     }
 
     public void OPFX29() {
-        indexRegister = VRegister[(opcode & 0x0F00) >> 8] * 5;
+        OPFX29((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX29(int X) {
+        indexRegister = (VRegister[X] & 0xFF) * 5;
         PC += 2;
         VF = true;
     }
 
     public void OPFX33() {
-        int X = (opcode & 0x0F00) >> 8;
-        memory[indexRegister] = VRegister[X] / 100;
-        memory[indexRegister + 1] = (VRegister[X] % 100) / 10;
-        memory[indexRegister + 2] = (VRegister[X] % 100) % 10;
+        OPFX33((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX33(int X) {
+        int vx = VRegister[X] & 0xFF;
+        memory[indexRegister] = (byte) (vx / 100);
+        memory[indexRegister + 1] = (byte) ((vx % 100) / 10);
+        memory[indexRegister + 2] = (byte) ((vx % 100) % 10);
+        memoryWritten(indexRegister, 3);
+        if (profile != null) {
+            profile.written(indexRegister, 3);
+        }
         PC += 2;
     }
 
     public void OPFX55() {
-        int X = (opcode & 0x0F00) >> 8;
-        for (int i = 0; i <= X; i++) {
-            memory[indexRegister + i] = VRegister[i];
+        OPFX55((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX55(int X) {
+        System.arraycopy(VRegister, 0, memory, indexRegister, X + 1);
+        memoryWritten(indexRegister, X + 1);
+        if (profile != null) {
+            profile.written(indexRegister, X + 1);
         }
         PC += 2;
     }
 
     public void OPFX65() {
-        int X = (opcode & 0x0F00) >> 8;
-        for (int i = 0; i <= X; i++) {
-            VRegister[i] = (memory[indexRegister + i]) & 0xFF;
+        OPFX65((opcode & 0x0F00) >> 8);
+    }
+
+    public void OPFX65(int X) {
+        System.arraycopy(memory, indexRegister, VRegister, 0, X + 1);
+        if (profile != null) {
+            profile.read(indexRegister, X + 1);
         }
         PC += 2;
     }
@@ -491,13 +575,110 @@ public class Chip8CPU {
         }
 
         if (soundTimer > 0) {
-            if (soundTimer == 1) {
-                System.out.println("BEEP!");
-            }
             soundTimer--;
         }
     }
 
+    // FNV-1a style hash taken a whole row at a time
+    public long framebufferHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (int y = 0; y < 32; y++) {
+            hash = (hash ^ gfx[y]) * 0x100000001b3L;
+            hash ^= hash >>> 32;
+        }
+        return hash;
+    }
+
+    // writes STATE_SIZE bytes at the buffer's position
+    public void saveState(ByteBuffer out) {
+        out.putInt(STATE_MAGIC);
+        out.putShort((short) STATE_VERSION);
+        out.put(memory);
+        for (int i = 0; i < VRegister.length; i++) {
+            out.putInt(VRegister[i] & 0xFF);
+        }
+        out.putInt(indexRegister);
+        out.putInt(PC);
+        out.putInt(opcode);
+        for (int i = 0; i < stack.length; i++) {
+            out.putInt(stack[i]);
+        }
+        out.putInt(stackPointer);
+        out.putInt(delayTimer);
+        out.putInt(soundTimer);
+        for (int y = 0; y < gfx.length; y++) {
+            out.putLong(gfx[y]);
+        }
+        out.putShort((short) keys);
+        out.putShort((short) romLength);
+        out.put((byte) (VF ? 1 : 0));
+        out.putLong(randomState);
+    }
+
+    public void loadState(ByteBuffer in) {
+        if (in.remaining() < STATE_SIZE || in.getInt(in.position()) != STATE_MAGIC
+                || in.getShort(in.position() + 4) != STATE_VERSION) {
+            throw new IllegalArgumentException("Not a CHIP-8 save state");
+        }
+        in.position(in.position() + 6);
+        readMemory(in);
+        for (int i = 0; i < VRegister.length; i++) {
+            VRegister[i] = (byte) in.getInt();
+        }
+        indexRegister = in.getInt();
+        PC = in.getInt();
+        opcode = in.getInt();
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = (short) in.getInt();
+        }
+        stackPointer = in.getInt();
+        delayTimer = in.getInt();
+        soundTimer = in.getInt();
+        for (int y = 0; y < gfx.length; y++) {
+            gfx[y] = in.getLong();
+        }
+        keys = in.getShort() & 0xFFFF;
+        romLength = in.getShort() & 0xFFFF;
+        VF = in.get() != 0;
+        randomState = in.getLong();
+        dirtyRows = -1;
+    }
+
+    // only runs of bytes that differ are reported, so restoring a state of the
+    // running program keeps the engines' decoded and compiled blocks
+    private void readMemory(ByteBuffer in) {
+        int changed = -1;
+        for (int a = 0; a < memory.length; a++) {
+            byte value = in.get();
+            if (value != memory[a]) {
+                memory[a] = value;
+                if (changed < 0) {
+                    changed = a;
+                }
+            } else if (changed >= 0) {
+                memoryWritten(changed, a - changed);
+                changed = -1;
+            }
+        }
+        if (changed >= 0) {
+            memoryWritten(changed, memory.length - changed);
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // restarts the random stream, so the same seed and inputs replay the same run
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.randomState = seed;
+    }
+
+    public int getRomLength() {
+        return romLength;
+    }
+
     public int getOpcode() {
         return this.opcode;
     }
@@ -507,19 +688,20 @@ public class Chip8CPU {
     }
 
     public int getMemoryAtIndex(int index) {
-        return this.memory[index];
+        return this.memory[index] & 0xFF;
     }
 
     public void setMemoryAtIndex(int index, int value) {
-        this.memory[index] = value;
+        this.memory[index] = (byte) value;
+        memoryWritten(index, 1);
     }
 
     public int getVRegisterAtIndex(int index) {
-        return this.VRegister[index];
+        return this.VRegister[index] & 0xFF;
     }
 
     public void setVRegisterAtIndex(int index, int value) {
-        this.VRegister[index] = value;
+        this.VRegister[index] = (byte) value;
     }
 
     public int getIndexRegister() {
@@ -538,16 +720,47 @@ public class Chip8CPU {
         this.PC = value;
     }
 
+    // column-major copy of the framebuffer, one int per pixel
     public int[][] getGFX() {
-        return this.gfx;
+        int[][] pixels = new int[64][32];
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 32; y++) {
+                pixels[x][y] = getGFXAtXY(x, y);
+            }
+        }
+        return pixels;
     }
 
     public int getGFXAtXY(int x, int y) {
-        return gfx[x][y];
+        return (int) (gfx[y] >>> (63 - x)) & 1;
     }
 
     public void setGFXAtXY(int x, int y) {
-        this.gfx[x][y] ^= 1;
+        this.gfx[y] ^= 1L << (63 - x);
+        dirtyRows |= 1 << y;
+    }
+
+    public long getGFXRow(int y) {
+        return gfx[y];
+    }
+
+    public void copyFramebuffer(long[] rows) {
+        System.arraycopy(gfx, 0, rows, 0, gfx.length);
+    }
+
+    public int getDirtyRows() {
+        return dirtyRows;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    // returns the rows changed since the last call and marks them clean
+    public int takeDirtyRows() {
+        int rows = dirtyRows;
+        dirtyRows = 0;
+        return rows;
     }
 
     public int getSoundTimer() {
@@ -571,7 +784,7 @@ public class Chip8CPU {
     }
 
     public void setStackAtIndex(int index, int value) {
-        this.stack[index] = value;
+        this.stack[index] = (short) value;
     }
 
     public int getStackPointer() {
@@ -582,12 +795,24 @@ public class Chip8CPU {
         this.stackPointer = stackPointer;
     }
 
-    public int[] getKey() {
-        return key;
+    public int getKeyAtIndex(int index) {
+        return (keys >>> index) & 1;
     }
 
     public void setKeyAtIndex(int index, int value) {
-        this.key[index] = value;
+        if (value != 0) {
+            keys |= 1 << index;
+        } else {
+            keys &= ~(1 << index);
+        }
+    }
+
+    public int getKeys() {
+        return keys;
+    }
+
+    public void setKeys(int keys) {
+        this.keys = keys & 0xFFFF;
     }
 
     public boolean isVF() {
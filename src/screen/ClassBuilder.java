@@ -0,0 +1,328 @@
+package screen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal class file writer for generated code. Emits version 49 class files so
+// methods with branches verify without a StackMapTable.
+final class ClassBuilder {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<CodeBuilder> methods = new ArrayList<CodeBuilder>();
+
+    ClassBuilder(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    CodeBuilder method(int access, String name, String descriptor, int maxLocals) {
+        CodeBuilder code = new CodeBuilder(access, utf8(name), utf8(descriptor), maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    // public no-argument constructor that only calls super()
+    void defaultConstructor(String superName) {
+        CodeBuilder code = method(ACC_PUBLIC, "<init>", "()V", 1);
+        code.aload(0);
+        code.invokespecial(superName, "<init>", "()V");
+        code.op(CodeBuilder.RETURN);
+    }
+
+    byte[] toByteArray() {
+        try {
+            int codeName = utf8("Code");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int i : interfaces) {
+                out.writeShort(i);
+            }
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (CodeBuilder method : methods) {
+                method.write(out, codeName);
+            }
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int utf8(String value) {
+        Integer index = poolIndex.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("U" + value);
+    }
+
+    private int classRef(String name) {
+        Integer index = poolIndex.get("C" + name);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(name);
+        write(7, nameIndex);
+        return register("C" + name);
+    }
+
+    private int methodRef(String owner, String name, String descriptor) {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        write(10, ownerIndex, nameAndType);
+        return register(key);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        Integer index = poolIndex.get("N" + name + descriptor);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(12, nameIndex, descriptorIndex);
+        return register("N" + name + descriptor);
+    }
+
+    private void write(int tag, int... values) {
+        try {
+            poolOut.writeByte(tag);
+            for (int value : values) {
+                poolOut.writeShort(value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int register(String key) {
+        int index = poolCount++;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    final class CodeBuilder {
+        static final int ICONST_0 = 0x03;
+        static final int IALOAD = 0x2e;
+        static final int BALOAD = 0x33;
+        static final int IASTORE = 0x4f;
+        static final int BASTORE = 0x54;
+        static final int IADD = 0x60;
+        static final int ISUB = 0x64;
+        static final int IMUL = 0x68;
+        static final int IDIV = 0x6c;
+        static final int IREM = 0x70;
+        static final int ISHL = 0x78;
+        static final int ISHR = 0x7a;
+        static final int IAND = 0x7e;
+        static final int IOR = 0x80;
+        static final int IXOR = 0x82;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IF_ICMPEQ = 0x9f;
+        static final int IF_ICMPNE = 0xa0;
+        static final int IF_ICMPLT = 0xa1;
+        static final int IF_ICMPGE = 0xa2;
+        static final int IF_ICMPGT = 0xa3;
+        static final int IF_ICMPLE = 0xa4;
+        static final int GOTO = 0xa7;
+        static final int IRETURN = 0xac;
+        static final int RETURN = 0xb1;
+
+        private static final int MAX_STACK = 8;
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final int maxLocals;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final Map<Integer, Label> labels = new HashMap<Integer, Label>();
+        // {instruction offset, label id} for branches
+        private final List<int[]> fixups = new ArrayList<int[]>();
+        // {instruction offset, slot offset, label id} for switch targets
+        private final List<int[]> switches = new ArrayList<int[]>();
+        private int nextLabel;
+
+        private CodeBuilder(int access, int name, int descriptor, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        void op(int opcode) {
+            code.write(opcode);
+        }
+
+        void push(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10);
+                code.write(value);
+            } else {
+                op(0x11);
+                u2(value);
+            }
+        }
+
+        void iload(int local) {
+            op(0x15);
+            code.write(local);
+        }
+
+        void istore(int local) {
+            op(0x36);
+            code.write(local);
+        }
+
+        void aload(int local) {
+            op(0x19);
+            code.write(local);
+        }
+
+        void astore(int local) {
+            op(0x3a);
+            code.write(local);
+        }
+
+        void invokevirtual(String owner, String name, String descriptor) {
+            op(0xb6);
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        void invokespecial(String owner, String name, String descriptor) {
+            op(0xb7);
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        void invokestatic(String owner, String name, String descriptor) {
+            op(0xb8);
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        Label label() {
+            return new Label();
+        }
+
+        void jump(int opcode, Label target) {
+            fixups.add(new int[] {code.size(), target.id});
+            op(opcode);
+            u2(0);
+        }
+
+        void mark(Label label) {
+            label.offset = code.size();
+            labels.put(label.id, label);
+        }
+
+        // lookupswitch on the int at the top of the stack; keys must be sorted
+        void lookupswitch(int[] keys, Label[] targets, Label fallback) {
+            int start = code.size();
+            op(0xab);
+            while (code.size() % 4 != 0) {
+                code.write(0);
+            }
+            switches.add(new int[] {start, code.size(), fallback.id});
+            u4(0);
+            u4(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                u4(keys[i]);
+                switches.add(new int[] {start, code.size(), targets[i].id});
+                u4(0);
+            }
+        }
+
+        private void u2(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        private void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+
+        private void write(DataOutputStream out, int codeName) throws IOException {
+            byte[] bytes = code.toByteArray();
+            for (int[] fixup : fixups) {
+                int delta = labels.get(fixup[1]).offset - fixup[0];
+                if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Branch out of range");
+                }
+                bytes[fixup[0] + 1] = (byte) (delta >> 8);
+                bytes[fixup[0] + 2] = (byte) delta;
+            }
+            for (int[] entry : switches) {
+                int delta = labels.get(entry[2]).offset - entry[0];
+                bytes[entry[1]] = (byte) (delta >> 24);
+                bytes[entry[1] + 1] = (byte) (delta >> 16);
+                bytes[entry[1] + 2] = (byte) (delta >> 8);
+                bytes[entry[1] + 3] = (byte) delta;
+            }
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(MAX_STACK);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        final class Label {
+            private final int id = nextLabel++;
+            private int offset = -1;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package screen;
+
+interface CompiledBlock {
+    // runs the block from its start address and returns the instructions executed
+    int execute(Chip8CPU CPU);
+}
@@ -0,0 +1,7 @@
+package screen;
+
+interface CompiledProgram {
+    // runs the compiled block starting at the CPU's PC and returns the instructions
+    // executed, or -1 when no block was compiled for that address
+    int execute(Chip8CPU CPU);
+}
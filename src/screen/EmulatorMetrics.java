@@ -0,0 +1,206 @@
+package screen;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Counters for one running emulator. The emulation thread reports once per frame
+// and the FX thread once per drawn frame; each counter has a single writer, so
+// updates are ordered stores rather than atomic read-modify-writes, and readers
+// such as JMX clients or the HUD never block either side. Per-instruction counts
+// cost a table lookup per instruction and are off until enabled.
+public class EmulatorMetrics implements EmulatorMetricsMBean {
+    public static final String OBJECT_NAME = "screen:type=EmulatorMetrics";
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    // written by the emulation thread
+    private final AtomicLong instructions = new AtomicLong();
+    private final AtomicLong framesEmulated = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong lateFrames = new AtomicLong();
+    private final AtomicLong schedulerLag = new AtomicLong();
+    private final AtomicLong maxSchedulerLag = new AtomicLong();
+    private volatile double effectiveMHz;
+    private long windowStart = System.nanoTime();
+    private long windowInstructions;
+    // written by the FX thread
+    private final AtomicLong framesRendered = new AtomicLong();
+    private final LatencyHistogram renderTimes = new LatencyHistogram();
+    // key press to the first drawn frame emulated after the key reached the CPU
+    private final LatencyHistogram inputLatency = new LatencyHistogram();
+
+    private final OpcodeCounts opcodeCounts = new OpcodeCounts();
+    private volatile boolean opcodeCounting = Boolean.getBoolean("chip8.metrics.opcodes");
+    private volatile AudioOutput audio;
+
+    // emulation thread, after every emulated frame
+    void frameEmulated(int executed) {
+        instructions.lazySet(instructions.get() + executed);
+        framesEmulated.lazySet(framesEmulated.get() + 1);
+        windowInstructions += executed;
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            // instructions per microsecond is MHz
+            effectiveMHz = windowInstructions * 1000.0 / elapsed;
+            windowStart = now;
+            windowInstructions = 0;
+        }
+    }
+
+    // emulation thread, when a published frame replaced one the display never took
+    void frameDropped() {
+        droppedFrames.lazySet(droppedFrames.get() + 1);
+    }
+
+    // emulation thread, with how far behind its deadline a paced frame started
+    void schedulerLag(long nanos) {
+        schedulerLag.lazySet(nanos);
+        if (nanos > maxSchedulerLag.get()) {
+            maxSchedulerLag.lazySet(nanos);
+        }
+        if (nanos > FrameScheduler.FRAME_NANOS) {
+            lateFrames.lazySet(lateFrames.get() + 1);
+        }
+    }
+
+    // FX thread, after a frame was drawn
+    void frameRendered(long nanos) {
+        framesRendered.lazySet(framesRendered.get() + 1);
+        renderTimes.record(nanos);
+    }
+
+    // FX thread, when a frame carrying a key change was drawn
+    void inputShown(long nanos) {
+        inputLatency.record(nanos);
+    }
+
+    // the audio counters are read from the output itself
+    void setAudio(AudioOutput audio) {
+        this.audio = audio;
+    }
+
+    OpcodeCounts getOpcodeCountsCollector() {
+        return opcodeCounts;
+    }
+
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getInstructionsExecuted() {
+        return instructions.get();
+    }
+
+    public double getEffectiveMHz() {
+        return effectiveMHz;
+    }
+
+    public long getFramesEmulated() {
+        return framesEmulated.get();
+    }
+
+    public long getFramesRendered() {
+        return framesRendered.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public LatencyHistogram getRenderTimes() {
+        return renderTimes;
+    }
+
+    public long getRenderTimeP50Micros() {
+        return renderTimes.percentile(0.5) / 1000;
+    }
+
+    public long getRenderTimeP90Micros() {
+        return renderTimes.percentile(0.9) / 1000;
+    }
+
+    public long getRenderTimeP99Micros() {
+        return renderTimes.percentile(0.99) / 1000;
+    }
+
+    public LatencyHistogram getInputLatency() {
+        return inputLatency;
+    }
+
+    public long getInputEvents() {
+        return inputLatency.getCount();
+    }
+
+    public long getInputLatencyP50Micros() {
+        return inputLatency.percentile(0.5) / 1000;
+    }
+
+    public long getInputLatencyP99Micros() {
+        return inputLatency.percentile(0.99) / 1000;
+    }
+
+    public long getSchedulerLagMicros() {
+        return schedulerLag.get() / 1000;
+    }
+
+    public long getMaxSchedulerLagMicros() {
+        return maxSchedulerLag.get() / 1000;
+    }
+
+    public long getLateFrames() {
+        return lateFrames.get();
+    }
+
+    public long getAudioUnderruns() {
+        AudioOutput audio = this.audio;
+        return audio == null ? 0 : audio.getUnderruns();
+    }
+
+    public long getAudioDroppedFrames() {
+        AudioOutput audio = this.audio;
+        return audio == null ? 0 : audio.getDroppedFrames();
+    }
+
+    public boolean isOpcodeCounting() {
+        return opcodeCounting;
+    }
+
+    // takes effect at the next frame boundary
+    public void setOpcodeCounting(boolean opcodeCounting) {
+        this.opcodeCounting = opcodeCounting;
+    }
+
+    public String[] getOpcodeMnemonics() {
+        return OpcodeCounts.mnemonics();
+    }
+
+    public long[] getOpcodeCounts() {
+        return opcodeCounts.snapshot();
+    }
+
+    public long getOpcodeCount(String mnemonic) {
+        return opcodeCounts.get(mnemonic);
+    }
+
+    // three lines for the on-screen overlay
+    public String summary() {
+        return String.format("%.2f MHz  %d frames  %d drawn  %d dropped%nrender p50 %d us  p99 %d us  lag %d us  late %d"
+                        + "%ninput p50 %.1f ms  p99 %.1f ms  audio underruns %d",
+                effectiveMHz, getFramesEmulated(), getFramesRendered(), getDroppedFrames(),
+                getRenderTimeP50Micros(), getRenderTimeP99Micros(), getSchedulerLagMicros(), getLateFrames(),
+                getInputLatencyP50Micros() / 1000.0, getInputLatencyP99Micros() / 1000.0, getAudioUnderruns());
+    }
+}
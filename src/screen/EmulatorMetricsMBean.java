@@ -0,0 +1,44 @@
+package screen;
+
+// JMX view of EmulatorMetrics, registered as screen:type=EmulatorMetrics
+public interface EmulatorMetricsMBean {
+    long getInstructionsExecuted();
+
+    double getEffectiveMHz();
+
+    long getFramesEmulated();
+
+    long getFramesRendered();
+
+    long getDroppedFrames();
+
+    long getRenderTimeP50Micros();
+
+    long getRenderTimeP90Micros();
+
+    long getRenderTimeP99Micros();
+
+    long getInputEvents();
+
+    long getInputLatencyP50Micros();
+
+    long getInputLatencyP99Micros();
+
+    long getSchedulerLagMicros();
+
+    long getMaxSchedulerLagMicros();
+
+    long getLateFrames();
+
+    long getAudioUnderruns();
+
+    long getAudioDroppedFrames();
+
+    boolean isOpcodeCounting();
+
+    void setOpcodeCounting(boolean opcodeCounting);
+
+    String[] getOpcodeMnemonics();
+
+    long[] getOpcodeCounts();
+}
@@ -0,0 +1,124 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EmulatorMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private String aotCache;
+
+    // EngineType.AOT caches recompiled ROMs under chip8.aot.cache, here a temporary folder
+    @Before
+    public void init() throws IOException {
+        aotCache = System.getProperty("chip8.aot.cache");
+        System.setProperty("chip8.aot.cache", folder.newFolder("aot").toString());
+    }
+
+    @After
+    public void restoreCache() {
+        if (aotCache == null) {
+            System.clearProperty("chip8.aot.cache");
+        } else {
+            System.setProperty("chip8.aot.cache", aotCache);
+        }
+    }
+
+    private static Chip8CPU loopingCPU() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        // 200: V0 += 1, 202: jump 200
+        CPU.loadROM(new byte[] {0x70, 0x01, 0x12, 0x00});
+        return CPU;
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.upperBound(bucket - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.percentile(0.5), 0);
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(histogram.getCount(), 1000);
+        // within one bucket, 12.5%, of the exact values
+        assertEquals(histogram.percentile(0.5), 500_000, 62_500);
+        assertEquals(histogram.percentile(0.99), 990_000, 123_750);
+        assertTrue(histogram.percentile(1.0) >= 1_000_000);
+    }
+
+    @Test
+    public void testSchedulerCounters() {
+        for (EngineType type : EngineType.values()) {
+            Chip8CPU CPU = loopingCPU();
+            EmulatorMetrics metrics = new EmulatorMetrics();
+            metrics.setOpcodeCounting(true);
+            FrameScheduler scheduler = new FrameScheduler(CPU, type.create(CPU), 600, () -> {});
+            scheduler.setMetrics(metrics);
+            for (int i = 0; i < 60; i++) {
+                scheduler.runFrame();
+            }
+            assertEquals(metrics.getInstructionsExecuted(), 600);
+            assertEquals(metrics.getFramesEmulated(), 60);
+            // every engine counts each instruction exactly once
+            assertEquals(type.toString(), metrics.getOpcodeCount("7XKK"), 300);
+            assertEquals(type.toString(), metrics.getOpcodeCount("1NNN"), 300);
+        }
+    }
+
+    @Test
+    public void testOpcodeCountingOff() {
+        Chip8CPU CPU = loopingCPU();
+        EmulatorMetrics metrics = new EmulatorMetrics();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+        scheduler.setMetrics(metrics);
+        scheduler.runFrame();
+        assertNull(CPU.getOpcodeCounts());
+        assertEquals(metrics.getOpcodeCount("7XKK"), 0);
+
+        metrics.setOpcodeCounting(true);
+        scheduler.runFrame();
+        assertEquals(metrics.getOpcodeCount("7XKK"), 5);
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        EmulatorMetrics metrics = new EmulatorMetrics();
+        metrics.register();
+        metrics.frameEmulated(123);
+        metrics.frameRendered(40_000);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(EmulatorMetrics.OBJECT_NAME);
+        assertEquals(server.getAttribute(name, "InstructionsExecuted"), 123L);
+        assertEquals(server.getAttribute(name, "FramesRendered"), 1L);
+        assertEquals(((String[]) server.getAttribute(name, "OpcodeMnemonics")).length,
+                ((long[]) server.getAttribute(name, "OpcodeCounts")).length);
+        server.unregisterMBean(name);
+    }
+}
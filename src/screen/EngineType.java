@@ -0,0 +1,33 @@
+package screen;
+
+import java.util.Locale;
+
+public enum EngineType {
+    INTERPRETER {
+        public ExecutionEngine create(Chip8CPU CPU) {
+            return new Interpreter(CPU);
+        }
+    },
+    BLOCK {
+        public ExecutionEngine create(Chip8CPU CPU) {
+            return new BlockEngine(CPU);
+        }
+    },
+    JIT {
+        public ExecutionEngine create(Chip8CPU CPU) {
+            return new JitEngine(CPU);
+        }
+    },
+    AOT {
+        public ExecutionEngine create(Chip8CPU CPU) {
+            return new AotEngine(CPU);
+        }
+    };
+
+    public abstract ExecutionEngine create(Chip8CPU CPU);
+
+    public static EngineType parse(String name) {
+        // the root locale, so that a Turkish default does not upper-case "jit" to a dotted I
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
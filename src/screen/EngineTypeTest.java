@@ -0,0 +1,23 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class EngineTypeTest {
+
+    @Test
+    public void testParseIgnoresDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            for (EngineType type : EngineType.values()) {
+                assertEquals(type, EngineType.parse(type.name().toLowerCase(Locale.ROOT)));
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
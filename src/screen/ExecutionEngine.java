@@ -0,0 +1,6 @@
+package screen;
+
+public interface ExecutionEngine {
+    // runs exactly budget instructions and returns how many were executed
+    int run(int budget);
+}
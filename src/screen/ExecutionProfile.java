@@ -0,0 +1,140 @@
+package screen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Execution counts per instruction address and read/write counts per memory
+// address. The counters are allocated once; only the emulation thread counts,
+// so an increment is a plain read and an ordered write, and the profiler window
+// reads them while the emulator runs. A CPU without a profile pays one null check.
+public final class ExecutionProfile {
+    public static final int MEMORY_SIZE = 4096;
+
+    private final AtomicLongArray executions = new AtomicLongArray(MEMORY_SIZE);
+    private final AtomicLongArray reads = new AtomicLongArray(MEMORY_SIZE);
+    private final AtomicLongArray writes = new AtomicLongArray(MEMORY_SIZE);
+
+    // one instruction fetched from PC
+    void executed(int PC) {
+        int address = PC & (MEMORY_SIZE - 1);
+        executions.lazySet(address, executions.get(address) + 1);
+    }
+
+    // the first count instructions of a block starting at start
+    void executed(int start, int count) {
+        for (int i = 0; i < count; i++) {
+            executed(start + 2 * i);
+        }
+    }
+
+    void read(int address, int length) {
+        add(reads, address, length);
+    }
+
+    void written(int address, int length) {
+        add(writes, address, length);
+    }
+
+    private static void add(AtomicLongArray counts, int address, int length) {
+        int limit = Math.min(address + length, MEMORY_SIZE);
+        for (int a = Math.max(0, address); a < limit; a++) {
+            counts.lazySet(a, counts.get(a) + 1);
+        }
+    }
+
+    public long getExecutions(int address) {
+        return executions.get(address);
+    }
+
+    public long getReads(int address) {
+        return reads.get(address);
+    }
+
+    public long getWrites(int address) {
+        return writes.get(address);
+    }
+
+    // copies into arrays of MEMORY_SIZE so a view can reuse them on every refresh
+    public void copyExecutions(long[] into) {
+        copy(executions, into);
+    }
+
+    public void copyReads(long[] into) {
+        copy(reads, into);
+    }
+
+    public void copyWrites(long[] into) {
+        copy(writes, into);
+    }
+
+    private static void copy(AtomicLongArray counts, long[] into) {
+        for (int a = 0; a < MEMORY_SIZE; a++) {
+            into[a] = counts.get(a);
+        }
+    }
+
+    // only call while no thread is counting, e.g. from FrameScheduler.execute
+    public void reset() {
+        for (int a = 0; a < MEMORY_SIZE; a++) {
+            executions.lazySet(a, 0);
+            reads.lazySet(a, 0);
+            writes.lazySet(a, 0);
+        }
+    }
+
+    // A backward 1NNN jump and the code it jumps over. Iterations are the times the
+    // jump was taken; instructions are everything executed in [start, end).
+    public static final class HotLoop {
+        private final int start;
+        private final int end;
+        private final long iterations;
+        private final long instructions;
+
+        HotLoop(int start, int end, long iterations, long instructions) {
+            this.start = start;
+            this.end = end;
+            this.iterations = iterations;
+            this.instructions = instructions;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public long getIterations() {
+            return iterations;
+        }
+
+        public long getInstructions() {
+            return instructions;
+        }
+    }
+
+    // the loops that executed the most instructions, found from the backward jumps
+    // in memory that ran at least once; nested loops are reported separately
+    public static List<HotLoop> hotLoops(long[] executions, Chip8CPU CPU, int limit) {
+        List<HotLoop> loops = new ArrayList<HotLoop>();
+        for (int address = 0; address + 1 < MEMORY_SIZE; address++) {
+            if (executions[address] == 0) {
+                continue;
+            }
+            int opcode = CPU.getMemoryAtIndex(address) << 8 | CPU.getMemoryAtIndex(address + 1);
+            int target = opcode & 0x0FFF;
+            if ((opcode & 0xF000) != 0x1000 || target > address) {
+                continue;
+            }
+            long instructions = 0;
+            for (int a = target; a <= address; a++) {
+                instructions += executions[a];
+            }
+            loops.add(new HotLoop(target, address + 2, executions[address], instructions));
+        }
+        loops.sort((a, b) -> Long.compare(b.instructions, a.instructions));
+        return loops.size() > limit ? new ArrayList<HotLoop>(loops.subList(0, limit)) : loops;
+    }
+}
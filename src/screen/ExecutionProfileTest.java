@@ -0,0 +1,120 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExecutionProfileTest {
+    private static final int ITERATIONS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private String aotCache;
+
+    // EngineType.AOT caches recompiled ROMs under chip8.aot.cache, here a temporary folder
+    @Before
+    public void init() throws IOException {
+        aotCache = System.getProperty("chip8.aot.cache");
+        System.setProperty("chip8.aot.cache", folder.newFolder("aot").toString());
+    }
+
+    @After
+    public void restoreCache() {
+        if (aotCache == null) {
+            System.clearProperty("chip8.aot.cache");
+        } else {
+            System.setProperty("chip8.aot.cache", aotCache);
+        }
+    }
+
+    private static Chip8CPU profiledCPU() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(new byte[] {
+            (byte) 0xA3, 0x00,       // 200: I = 300
+            0x70, 0x01,              // 202: V0 += 1
+            (byte) 0xF2, 0x55,       // 204: store V0-V2 at 300
+            (byte) 0xF1, 0x65,       // 206: load V0-V1 from 300
+            (byte) 0xD3, 0x45,       // 208: draw 5 rows from 300 at V3,V4
+            0x12, 0x02               // 20A: jump 202
+        });
+        return CPU;
+    }
+
+    @Test
+    public void testCountsMatchAcrossEngines() {
+        for (EngineType type : EngineType.values()) {
+            Chip8CPU CPU = profiledCPU();
+            ExecutionProfile profile = new ExecutionProfile();
+            // one frame runs the setup and every iteration, enough for the JIT to compile the loop
+            FrameScheduler scheduler = new FrameScheduler(CPU, type.create(CPU),
+                    (1 + 5L * ITERATIONS) * FrameScheduler.FRAME_RATE, () -> {});
+            scheduler.setProfile(profile);
+            scheduler.runFrame();
+
+            String engine = type.toString();
+            assertEquals(engine, profile.getExecutions(0x200), 1);
+            for (int address = 0x202; address <= 0x20A; address += 2) {
+                assertEquals(engine, profile.getExecutions(address), ITERATIONS);
+                assertEquals(engine, profile.getExecutions(address + 1), 0);
+            }
+            assertEquals(engine, profile.getWrites(0x302), ITERATIONS);
+            assertEquals(engine, profile.getWrites(0x303), 0);
+            // FX65 and the sprite both read the first two bytes
+            assertEquals(engine, profile.getReads(0x300), 2 * ITERATIONS);
+            assertEquals(engine, profile.getReads(0x304), ITERATIONS);
+            assertEquals(engine, profile.getReads(0x305), 0);
+        }
+    }
+
+    @Test
+    public void testHotLoops() {
+        Chip8CPU CPU = profiledCPU();
+        ExecutionProfile profile = new ExecutionProfile();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU),
+                (1 + 5L * ITERATIONS) * FrameScheduler.FRAME_RATE, () -> {});
+        scheduler.setProfile(profile);
+        scheduler.runFrame();
+
+        long[] executions = new long[ExecutionProfile.MEMORY_SIZE];
+        profile.copyExecutions(executions);
+        List<ExecutionProfile.HotLoop> loops = ExecutionProfile.hotLoops(executions, CPU, 10);
+        assertEquals(loops.size(), 1);
+        assertEquals(loops.get(0).getStart(), 0x202);
+        assertEquals(loops.get(0).getEnd(), 0x20C);
+        assertEquals(loops.get(0).getIterations(), ITERATIONS);
+        assertEquals(loops.get(0).getInstructions(), 5L * ITERATIONS);
+    }
+
+    @Test
+    public void testSwitchedAtFrameBoundaries() {
+        Chip8CPU CPU = profiledCPU();
+        ExecutionProfile profile = new ExecutionProfile();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new BlockEngine(CPU), 600, () -> {});
+        scheduler.runFrame();
+        assertNull(CPU.getProfile());
+
+        scheduler.setProfile(profile);
+        scheduler.runFrame();
+        assertSame(CPU.getProfile(), profile);
+        scheduler.setProfile(null);
+        scheduler.runFrame();
+        assertNull(CPU.getProfile());
+
+        // only the profiled frame's ten instructions were counted
+        long total = 0;
+        for (int address = 0; address < ExecutionProfile.MEMORY_SIZE; address++) {
+            total += profile.getExecutions(address);
+        }
+        assertEquals(total, 10);
+        profile.reset();
+        assertEquals(profile.getExecutions(0x202), 0);
+    }
+}
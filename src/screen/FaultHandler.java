@@ -0,0 +1,15 @@
+package screen;
+
+@FunctionalInterface
+public interface FaultHandler {
+    FaultHandler LOG_AND_SKIP = (CPU, opcode) -> {
+        System.err.printf("ERROR: Unknown opcode %04X at %03X%n", opcode, CPU.getPC());
+        CPU.setPC(CPU.getPC() + 2);
+    };
+
+    FaultHandler THROW = (CPU, opcode) -> {
+        throw new IllegalStateException(String.format("Unknown opcode %04X at %03X", opcode, CPU.getPC()));
+    };
+
+    void unknownOpcode(Chip8CPU CPU, int opcode);
+}
@@ -0,0 +1,78 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class FlightEventsTest {
+
+    private static FrameScheduler scheduler() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        // 200: clear, 202: V0 += 1, 204: draw 0 at V0,V0, 206: jump 200
+        CPU.loadROM(new byte[] {0x00, (byte) 0xE0, 0x70, 0x01, (byte) 0xD0, 0x05, 0x12, 0x00});
+        return new FrameScheduler(CPU, new Interpreter(CPU), 480, () -> {});
+    }
+
+    private static List<RecordedEvent> record(Recording recording, FrameScheduler scheduler) throws IOException {
+        recording.start();
+        scheduler.runFrame();
+        scheduler.setKeys(1 << 5);
+        scheduler.runFrame();
+        scheduler.runFrame();
+        recording.stop();
+        Path file = Files.createTempFile("chip8", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            recording.close();
+            Files.delete(file);
+        }
+    }
+
+    private static long count(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).count();
+    }
+
+    @Test
+    public void testFrameAndInputEvents() throws IOException {
+        Recording recording = new Recording();
+        recording.enable("screen.Frame");
+        recording.enable("screen.InputLatency");
+        List<RecordedEvent> events = record(recording, scheduler());
+
+        assertEquals(count(events, "screen.Frame"), 3);
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("screen.Frame")) {
+                // 8 instructions a frame, two passes through the four instruction loop
+                assertEquals(event.getInt("instructions"), 8);
+                assertEquals(event.getInt("drawCalls"), 4);
+                assertEquals(event.getString("engine"), "Interpreter");
+            }
+        }
+        // one key change, ended by the frame that applied it
+        assertEquals(count(events, "screen.InputLatency"), 1);
+        RecordedEvent input = events.stream()
+                .filter(e -> e.getEventType().getName().equals("screen.InputLatency")).findFirst().get();
+        assertEquals(input.getInt("keys"), 1 << 5);
+        assertEquals(input.getLong("frame"), 1);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws IOException {
+        // a recording that does not ask for the events sees none of them
+        List<RecordedEvent> events = record(new Recording(), scheduler());
+        assertEquals(count(events, "screen.Frame"), 0);
+        assertEquals(count(events, "screen.InputLatency"), 0);
+    }
+}
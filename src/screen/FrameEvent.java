@@ -0,0 +1,31 @@
+package screen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One emulated frame; the event spans the engine call only, so its duration is
+// the time spent executing instructions. Disabled unless a recording enables it.
+@Name("screen.Frame")
+@Label("Emulated Frame")
+@Category("CHIP-8")
+@Description("Instructions executed for one 60 Hz frame")
+@Enabled(false)
+@StackTrace(false)
+final class FrameEvent extends jdk.jfr.Event {
+    @Label("Frame")
+    long frame;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Draw Calls")
+    @Description("00E0 and DXYN instructions executed")
+    int drawCalls;
+
+    @Label("Engine")
+    String engine;
+}
@@ -0,0 +1,45 @@
+package screen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Triple buffer between one producer (the emulation thread) and one consumer
+// (the FX thread). The producer fills its back buffer and swaps it with the
+// ready buffer; the consumer swaps its front buffer with the ready one. Neither
+// side ever waits, and a frame is only seen after it was completely written.
+final class FrameExchange {
+    static final int ROWS = 32;
+    // the slot after the rows carries the press time of a key change the frame reflects
+    static final int INPUT_TIME = ROWS;
+
+    private static final int INDEX = 0x3;
+    // set while the ready buffer holds a frame the consumer has not taken yet
+    private static final int FRESH = 0x4;
+
+    private final long[][] buffers = new long[3][ROWS + 1];
+    private final AtomicInteger ready = new AtomicInteger(1);
+    // owned by the producer
+    private int back = 0;
+    // owned by the consumer
+    private int front = 2;
+
+    // buffer the producer may write the next frame into
+    long[] back() {
+        return buffers[back];
+    }
+
+    // true when the frame it replaces was never taken by the consumer
+    boolean publish() {
+        int previous = ready.getAndSet(back | FRESH);
+        back = previous & INDEX;
+        return (previous & FRESH) != 0;
+    }
+
+    // the newest published frame, or null if nothing was published since the last call
+    long[] latest() {
+        if ((ready.get() & FRESH) == 0) {
+            return null;
+        }
+        front = ready.getAndSet(front) & INDEX;
+        return buffers[front];
+    }
+}
@@ -0,0 +1,65 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class FrameExchangeTest {
+
+    @Test
+    public void testLatestFrame() {
+        FrameExchange frames = new FrameExchange();
+        assertNull(frames.latest());
+
+        // only the newest of several unconsumed frames is handed out, the others are reported dropped
+        for (int i = 1; i <= 3; i++) {
+            Arrays.fill(frames.back(), i);
+            assertEquals(frames.publish(), i > 1);
+        }
+        long[] frame = frames.latest();
+        assertEquals(frame[0], 3);
+        assertEquals(frame[31], 3);
+        assertNull(frames.latest());
+    }
+
+    @Test
+    public void testBuffersNeverShared() {
+        FrameExchange frames = new FrameExchange();
+        frames.publish();
+        long[] front = frames.latest();
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(frames.back(), front);
+            frames.publish();
+        }
+    }
+
+    @Test
+    public void testNoTornFrames() throws InterruptedException {
+        FrameExchange frames = new FrameExchange();
+        int count = 200000;
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= count; i++) {
+                Arrays.fill(frames.back(), i);
+                frames.publish();
+            }
+        });
+        producer.start();
+
+        long last = 0;
+        while (last < count) {
+            long[] frame = frames.latest();
+            if (frame == null) {
+                continue;
+            }
+            // every row comes from the same frame and frames never go backwards
+            for (int y = 1; y < frame.length; y++) {
+                assertEquals(frame[0], frame[y]);
+            }
+            assertTrue(frame[0] > last);
+            last = frame[0];
+        }
+        producer.join();
+    }
+}
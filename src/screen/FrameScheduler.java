@@ -0,0 +1,500 @@
+package screen;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the emulation one 60 Hz frame at a time on its own thread. Each frame
+// executes clockSpeed / 60 instructions in one engine call, carrying the
+// fractional part into the next frame, then ticks the timers once, so timer
+// time follows the virtual cycle count. Frames are paced against an absolute
+// System.nanoTime schedule so sleep jitter never accumulates. In turbo mode
+// several emulated frames run per real frame, or frames run back to back.
+// While paused, or while the program waits in FX0A with both timers at zero,
+// the thread parks until a key change, a task or a control call wakes it.
+public class FrameScheduler implements Runnable {
+    public static final int FRAME_RATE = 60;
+    public static final long DEFAULT_CLOCK_SPEED = 500;
+    // speed that runs frames back to back without pacing
+    public static final int UNTHROTTLED = 0;
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    static final long FRAME_NANOS = SECOND_NANOS / FRAME_RATE;
+    // further behind than this the schedule restarts instead of running frames back to back
+    private static final int MAX_LAG_FRAMES = 6;
+
+    private final Chip8CPU CPU;
+    private final ExecutionEngine engine;
+    private final Runnable frameListener;
+    private volatile long clockSpeed;
+    // emulated frames per real frame, or UNTHROTTLED
+    private volatile int speed = 1;
+    // the listener sees every frameSkip-th frame
+    private volatile int frameSkip = 1;
+    private volatile boolean running;
+    private volatile boolean paused;
+    private volatile RewindBuffer rewindBuffer;
+    // while set, frames step back through the rewind buffer instead of running
+    private volatile boolean rewinding;
+    // key edges from the UI thread, drained at the next frame boundary
+    private final KeyEventQueue keyEvents = new KeyEventQueue();
+    // the mask after every queued edge, only touched by the producing thread
+    private int queuedKeys;
+    // a whole mask to apply once the ring is drained, or -1; used when the ring was full
+    private final AtomicInteger resyncKeys = new AtomicInteger(-1);
+    private int appliedKeys;
+    // press time of the oldest key change applied but not yet taken by the frame listener
+    private long inputTime;
+    private volatile InputRecorder recorder;
+    private long recordingStart;
+    private volatile EmulatorMetrics metrics;
+    private volatile ExecutionProfile profile;
+    private volatile AudioOutput audio;
+    // flight recorder event begun by setKeys, handed over with the key change
+    private volatile InputLatencyEvent inputEvent;
+    private InputLatencyEvent appliedInput;
+    private final String engineName;
+    private volatile Thread thread;
+    // work that has to touch the CPU from other threads, run between frames
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    // instruction fractions carried between frames, in 1/60ths of an instruction
+    private long cycleRemainder;
+    private long cycles;
+    private long frames;
+
+    public FrameScheduler(Chip8CPU CPU, ExecutionEngine engine, long clockSpeed, Runnable frameListener) {
+        this.CPU = CPU;
+        this.engine = engine;
+        this.frameListener = frameListener;
+        this.engineName = engine.getClass().getSimpleName();
+        setClockSpeed(clockSpeed);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "chip8-frames");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // tasks that missed the last frame still run
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    public void run() {
+        long epoch = System.nanoTime();
+        long frame = 0;
+        try {
+            while (running) {
+                if (paused) {
+                    runTasks();
+                }
+                if (shouldPark()) {
+                    LockSupport.park(this);
+                    // pacing picks up from now instead of catching up on the parked time
+                    epoch = System.nanoTime();
+                    frame = 0;
+                    continue;
+                }
+                int speed = this.speed;
+                if (speed == UNTHROTTLED) {
+                    runFrame();
+                    // pacing picks up from now once turbo is switched off
+                    epoch = System.nanoTime();
+                    frame = 0;
+                    continue;
+                }
+                for (int i = 0; i < speed && running; i++) {
+                    runFrame();
+                }
+                frame++;
+                long deadline = epoch + frame * SECOND_NANOS / FRAME_RATE;
+                long wait = deadline - System.nanoTime();
+                EmulatorMetrics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.schedulerLag(Math.max(0, -wait));
+                }
+                if (wait < -MAX_LAG_FRAMES * FRAME_NANOS) {
+                    epoch = System.nanoTime();
+                    frame = 0;
+                }
+                while (wait > 0 && running) {
+                    LockSupport.parkNanos(this, wait);
+                    wait = deadline - System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            running = false;
+            e.printStackTrace();
+        }
+    }
+
+    // nothing can happen until another thread calls in: the machine is paused, or it
+    // waits for a key with no timer left to tick, so a frame would change nothing
+    private boolean shouldPark() {
+        if (!running || !tasks.isEmpty()) {
+            return false;
+        }
+        if (paused) {
+            return true;
+        }
+        return !rewinding && keyEvents.isEmpty() && resyncKeys.get() == -1 && CPU.isWaitingForKey()
+                && CPU.isTimersIdle();
+    }
+
+    private void wake() {
+        Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // runs the task on the emulation thread before the next frame, or right away when stopped
+    public void execute(Runnable task) {
+        if (!running) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        wake();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    public void runFrame() {
+        runTasks();
+        EmulatorMetrics metrics = this.metrics;
+        if (metrics != null) {
+            OpcodeCounts counts = metrics.isOpcodeCounting() ? metrics.getOpcodeCountsCollector() : null;
+            if (CPU.getOpcodeCounts() != counts) {
+                CPU.setOpcodeCounts(counts);
+            }
+        }
+        ExecutionProfile profile = this.profile;
+        if (CPU.getProfile() != profile) {
+            CPU.setProfile(profile);
+        }
+        RewindBuffer rewindBuffer = this.rewindBuffer;
+        AudioOutput audio = this.audio;
+        if (rewinding && rewindBuffer != null) {
+            if (rewindBuffer.rewind(CPU)) {
+                CPU.setKeys(appliedKeys);
+            }
+            if (audio != null) {
+                audio.frame(false);
+            }
+        } else {
+            applyKeys();
+            // begin/end compile to nothing unless a recording has enabled the event
+            FrameEvent event = new FrameEvent();
+            int drawCalls = CPU.getDrawCalls();
+            event.begin();
+            int budget = nextFrameCycles();
+            int executed;
+            if (CPU.isWaitingForKey() && CPU.getOpcodeCounts() == null && CPU.getProfile() == null) {
+                // FX0A would run the whole frame without changing anything
+                executed = budget;
+            } else {
+                executed = engine.run(budget);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.frame = frames;
+                event.instructions = executed;
+                event.drawCalls = CPU.getDrawCalls() - drawCalls;
+                event.engine = engineName;
+                event.commit();
+            }
+            cycles += executed;
+            // the tone covers the frames that start with the sound timer running
+            boolean tone = CPU.getSoundTimer() > 0;
+            CPU.updateTimers();
+            if (audio != null) {
+                audio.frame(tone);
+            }
+            if (rewindBuffer != null) {
+                rewindBuffer.record(CPU);
+            }
+            if (metrics != null) {
+                metrics.frameEmulated(executed);
+            }
+        }
+        frames++;
+        if (frames % frameSkip == 0) {
+            frameListener.run();
+        }
+        InputLatencyEvent input = appliedInput;
+        if (input != null) {
+            appliedInput = null;
+            input.frame = frames - 1;
+            input.commit();
+        }
+    }
+
+    // Takes at most one edge per key from the ring, so a press and release that both
+    // arrived within one frame are seen by two frames instead of cancelling out.
+    // Only keys whose state changed are written, so a key consumed by FX0A stays
+    // released until it is pressed again.
+    private void applyKeys() {
+        int keys = appliedKeys;
+        int edges = 0;
+        long oldest = 0;
+        while (!keyEvents.isEmpty()) {
+            int bit = 1 << keyEvents.peekKey();
+            if ((edges & bit) != 0) {
+                break;
+            }
+            if (oldest == 0) {
+                oldest = keyEvents.peekTime();
+            }
+            keys = keyEvents.peekPressed() ? keys | bit : keys & ~bit;
+            edges |= bit;
+            keyEvents.poll();
+        }
+        if (keyEvents.isEmpty() && resyncKeys.get() != -1) {
+            keys = resyncKeys.getAndSet(-1);
+        }
+        int changed = keys ^ appliedKeys;
+        if (changed == 0) {
+            return;
+        }
+        if (inputTime == 0) {
+            inputTime = oldest != 0 ? oldest : System.nanoTime();
+        }
+        for (int i = 0; i < 16; i++) {
+            if ((changed & (1 << i)) != 0) {
+                CPU.setKeyAtIndex(i, (keys >>> i) & 1);
+            }
+        }
+        appliedKeys = keys;
+        InputLatencyEvent input = inputEvent;
+        if (input != null) {
+            inputEvent = null;
+            appliedInput = input;
+        }
+        if (recorder != null) {
+            recorder.keysChanged(frames - recordingStart, keys);
+        }
+    }
+
+    // these run on the emulation thread, from execute() while the scheduler is running
+    public void startRecording() {
+        recorder = new InputRecorder(CPU, clockSpeed, cycleRemainder, appliedKeys);
+        recordingStart = frames;
+    }
+
+    public InputRecorder stopRecording() {
+        InputRecorder finished = recorder;
+        recorder = null;
+        if (finished != null) {
+            finished.finish(CPU, frames - recordingStart);
+        }
+        return finished;
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    // Loads a snapshot but keeps the keys the host holds now, since the ones held
+    // when it was taken may have been released since. Edges still in the ring apply
+    // on top as usual.
+    public void loadState(ByteBuffer state) {
+        CPU.loadState(state);
+        CPU.setKeys(appliedKeys);
+    }
+
+    // puts a fresh scheduler in the same place within the frame clock as a recorded one
+    void restore(long cycleRemainder, int appliedKeys) {
+        this.cycleRemainder = cycleRemainder;
+        this.appliedKeys = appliedKeys;
+        this.queuedKeys = appliedKeys;
+    }
+
+    // instructions for the next frame, so that every 60 frames add up to exactly clockSpeed
+    int nextFrameCycles() {
+        cycleRemainder += clockSpeed;
+        long count = cycleRemainder / FRAME_RATE;
+        cycleRemainder -= count * FRAME_RATE;
+        return (int) count;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getClockSpeed() {
+        return clockSpeed;
+    }
+
+    public void setClockSpeed(long clockSpeed) {
+        if (clockSpeed <= 0 || clockSpeed / FRAME_RATE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad clock speed " + clockSpeed);
+        }
+        this.clockSpeed = clockSpeed;
+    }
+
+    public int getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(int speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Bad speed " + speed);
+        }
+        this.speed = speed;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    public void setFrameSkip(int frameSkip) {
+        if (frameSkip <= 0) {
+            throw new IllegalArgumentException("Bad frame skip " + frameSkip);
+        }
+        this.frameSkip = frameSkip;
+    }
+
+    // the keys as the producing thread last left them, not yet necessarily applied
+    public int getKeys() {
+        return queuedKeys;
+    }
+
+    // The producer side: one thread, normally the UI thread, calls setKeys and
+    // keyChanged. A change reaches the CPU at the next frame boundary.
+    public void setKeys(int keys) {
+        int changed = (keys ^ queuedKeys) & 0xFFFF;
+        long now = System.nanoTime();
+        for (int i = 0; i < 16; i++) {
+            if ((changed & (1 << i)) != 0) {
+                keyChanged(i, (keys & (1 << i)) != 0, now);
+            }
+        }
+    }
+
+    // nanos is the System.nanoTime the key went down or up
+    public void keyChanged(int key, boolean pressed, long nanos) {
+        int keys = pressed ? queuedKeys | 1 << key : queuedKeys & ~(1 << key);
+        if (keys == queuedKeys) {
+            return;
+        }
+        queuedKeys = keys;
+        // while an earlier change is still in flight only that one is timed
+        if (inputEvent == null) {
+            InputLatencyEvent input = new InputLatencyEvent();
+            if (input.isEnabled()) {
+                input.keys = keys;
+                input.begin();
+                inputEvent = input;
+            }
+        }
+        // once the ring has overflowed, whole masks are handed over until the consumer catches up
+        if (resyncKeys.get() != -1 || !keyEvents.offer(key, pressed, nanos)) {
+            resyncKeys.set(keys);
+        }
+        wake();
+    }
+
+    // for the frame listener: the press time of the oldest key change applied since
+    // the last call, or 0 if there was none
+    public long takeInputTime() {
+        long time = inputTime;
+        inputTime = 0;
+        return time;
+    }
+
+    public EmulatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(EmulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ExecutionProfile getProfile() {
+        return profile;
+    }
+
+    // takes effect at the next frame boundary; null stops profiling
+    public void setProfile(ExecutionProfile profile) {
+        this.profile = profile;
+    }
+
+    public AudioOutput getAudio() {
+        return audio;
+    }
+
+    public void setAudio(AudioOutput audio) {
+        this.audio = audio;
+    }
+
+    public RewindBuffer getRewindBuffer() {
+        return rewindBuffer;
+    }
+
+    public void setRewindBuffer(RewindBuffer rewindBuffer) {
+        this.rewindBuffer = rewindBuffer;
+    }
+
+    public boolean isRewinding() {
+        return rewinding;
+    }
+
+    public void setRewinding(boolean rewinding) {
+        this.rewinding = rewinding;
+        wake();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // a paused scheduler still runs tasks, so state can be saved, loaded or stepped
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        wake();
+    }
+
+    // one instruction; the timers only tick with whole frames
+    public void step() {
+        execute(() -> {
+            applyKeys();
+            cycles += engine.run(1);
+            frameListener.run();
+        });
+    }
+
+    // one whole frame, timer tick included
+    public void stepFrame() {
+        execute(this::runFrame);
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+}
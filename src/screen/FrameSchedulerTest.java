@@ -0,0 +1,293 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+public class FrameSchedulerTest {
+
+    private static Chip8CPU loopingCPU() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        // 200: V0 += 1, 202: jump 200
+        CPU.loadROM(new byte[] {0x70, 0x01, 0x12, 0x00});
+        return CPU;
+    }
+
+    @Test
+    public void testFractionalCycles() {
+        Chip8CPU CPU = loopingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 700, () -> {});
+
+        // 700 / 60 is not whole, but every second of frames runs exactly 700 instructions
+        for (int second = 1; second <= 3; second++) {
+            for (int i = 0; i < FrameScheduler.FRAME_RATE; i++) {
+                scheduler.runFrame();
+            }
+            assertEquals(scheduler.getCycles(), 700L * second);
+        }
+        assertEquals(scheduler.getFrames(), 180);
+    }
+
+    @Test
+    public void testTimersFollowFrames() {
+        Chip8CPU CPU = loopingCPU();
+        int[] published = {0};
+        FrameScheduler scheduler = new FrameScheduler(CPU, new BlockEngine(CPU), 5_000_000, () -> published[0]++);
+        CPU.setDelayTimer(10);
+
+        // the timer ticks once per frame no matter how many instructions a frame holds
+        for (int i = 0; i < 4; i++) {
+            scheduler.runFrame();
+        }
+        assertEquals(CPU.getDelayTimer(), 6);
+        assertEquals(published[0], 4);
+        assertEquals(scheduler.getCycles(), 5_000_000L * 4 / 60);
+    }
+
+    @Test
+    public void testFrameSkip() {
+        Chip8CPU CPU = loopingCPU();
+        int[] published = {0};
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> published[0]++);
+        scheduler.setFrameSkip(4);
+        CPU.setDelayTimer(20);
+
+        // skipped frames still run and still tick the timers
+        for (int i = 0; i < 12; i++) {
+            scheduler.runFrame();
+        }
+        assertEquals(published[0], 3);
+        assertEquals(CPU.getDelayTimer(), 8);
+        assertEquals(scheduler.getCycles(), 120);
+    }
+
+    @Test
+    public void testUnthrottled() throws InterruptedException {
+        Chip8CPU CPU = loopingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new BlockEngine(CPU), 600, () -> {});
+        scheduler.setSpeed(FrameScheduler.UNTHROTTLED);
+        long start = System.nanoTime();
+        scheduler.start();
+        Thread.sleep(100);
+        scheduler.stop();
+        long realFrames = (System.nanoTime() - start) * FrameScheduler.FRAME_RATE / 1_000_000_000L + 1;
+        assertTrue(scheduler.getFrames() > realFrames * 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadClockSpeed() {
+        Chip8CPU CPU = loopingCPU();
+        new FrameScheduler(CPU, new Interpreter(CPU), 0, () -> {});
+    }
+
+    @Test
+    public void testStartStop() throws InterruptedException {
+        Chip8CPU CPU = loopingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new BlockEngine(CPU), 6000, () -> {});
+        scheduler.start();
+        Thread.sleep(100);
+        scheduler.stop();
+        assertFalse(scheduler.isRunning());
+        long frames = scheduler.getFrames();
+        assertTrue(frames > 0);
+        assertEquals(scheduler.getCycles(), frames * 100);
+    }
+
+    // 200: V0 = 5, 202: delay = V0, 204: wait for a key into V2, 206: V1 += 1, 208: jump 208
+    private static Chip8CPU keyWaitCPU() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(new byte[] {0x60, 0x05, (byte) 0xF0, 0x15, (byte) 0xF2, 0x0A, 0x71, 0x01, 0x12, 0x08});
+        return CPU;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    // no frames run over the given time
+    private static void assertParked(FrameScheduler scheduler) throws InterruptedException {
+        long frames = scheduler.getFrames();
+        Thread.sleep(100);
+        assertEquals(scheduler.getFrames(), frames);
+    }
+
+    @Test
+    public void testParksWhileWaitingForKey() throws InterruptedException {
+        Chip8CPU CPU = keyWaitCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+        // even unthrottled, a key wait runs no frames once the delay timer has run out
+        scheduler.setSpeed(FrameScheduler.UNTHROTTLED);
+        scheduler.start();
+        try {
+            waitUntil(() -> CPU.isWaitingForKey() && CPU.getDelayTimer() == 0);
+            assertParked(scheduler);
+            assertEquals(CPU.getPC(), 0x204);
+
+            scheduler.setKeys(1 << 3);
+            waitUntil(() -> CPU.getPC() == 0x208);
+            assertEquals(CPU.getVRegisterAtIndex(2), 3);
+            assertEquals(CPU.getVRegisterAtIndex(1), 1);
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testKeyWaitSkipsFrame() {
+        Chip8CPU CPU = keyWaitCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 6000, () -> {});
+        for (int i = 0; i < 3; i++) {
+            scheduler.runFrame();
+        }
+        // a waiting frame still counts its instructions and ticks the timers
+        assertEquals(scheduler.getCycles(), 300);
+        assertEquals(CPU.getDelayTimer(), 2);
+        assertTrue(CPU.isWaitingForKey());
+    }
+
+    @Test
+    public void testPauseAndStep() throws InterruptedException {
+        Chip8CPU CPU = loopingCPU();
+        int[] published = {0};
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> published[0]++);
+        scheduler.setPaused(true);
+        scheduler.start();
+        try {
+            assertParked(scheduler);
+            assertEquals(scheduler.getFrames(), 0);
+
+            scheduler.step();
+            waitUntil(() -> scheduler.getCycles() == 1);
+            assertEquals(CPU.getVRegisterAtIndex(0), 1);
+            assertEquals(CPU.getPC(), 0x202);
+            assertEquals(published[0], 1);
+
+            scheduler.stepFrame();
+            waitUntil(() -> scheduler.getFrames() == 1);
+            assertEquals(scheduler.getCycles(), 11);
+            assertParked(scheduler);
+
+            scheduler.setPaused(false);
+            waitUntil(() -> scheduler.getFrames() > 3);
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    // 200: V0 = 5, 202: skip if key V0 is not held, 204: V1 += 1, 206: jump 202
+    private static Chip8CPU keyCountingCPU() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(new byte[] {0x60, 0x05, (byte) 0xE0, (byte) 0xA1, 0x71, 0x01, 0x12, 0x02});
+        return CPU;
+    }
+
+    @Test
+    public void testShortPressReachesOneFrame() {
+        Chip8CPU CPU = keyCountingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 1800, () -> {});
+        scheduler.runFrame();
+
+        // pressed and released between two frames: one frame sees it held
+        scheduler.keyChanged(5, true, 1);
+        scheduler.keyChanged(5, false, 2);
+        scheduler.runFrame();
+        assertEquals(CPU.getKeyAtIndex(5), 1);
+        assertEquals(CPU.getVRegisterAtIndex(1), 10);
+        scheduler.runFrame();
+        assertEquals(CPU.getKeyAtIndex(5), 0);
+        assertEquals(CPU.getVRegisterAtIndex(1), 10);
+
+        // repeats of a held key are not edges
+        scheduler.keyChanged(5, true, 3);
+        scheduler.keyChanged(5, true, 4);
+        scheduler.runFrame();
+        scheduler.runFrame();
+        assertEquals(CPU.getVRegisterAtIndex(1), 30);
+    }
+
+    @Test
+    public void testInputTime() {
+        Chip8CPU CPU = keyCountingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+        scheduler.keyChanged(2, true, 100);
+        scheduler.keyChanged(7, true, 200);
+        assertEquals(scheduler.getKeys(), 1 << 2 | 1 << 7);
+        assertEquals(scheduler.takeInputTime(), 0);
+
+        // the oldest change applied since the last call
+        scheduler.runFrame();
+        scheduler.keyChanged(2, false, 300);
+        scheduler.runFrame();
+        assertEquals(scheduler.takeInputTime(), 100);
+        assertEquals(scheduler.takeInputTime(), 0);
+        assertEquals(CPU.getKeys(), 1 << 7);
+    }
+
+    @Test
+    public void testRingOverflow() {
+        Chip8CPU CPU = keyCountingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+        // nothing drains while no frame runs; past the ring's capacity whole masks take over
+        for (int i = 0; i < KeyEventQueue.CAPACITY + 7; i++) {
+            scheduler.keyChanged(i & 0xF, true, i + 1);
+            scheduler.keyChanged(i & 0xF, false, i + 1);
+        }
+        scheduler.keyChanged(9, true, 1);
+        for (int i = 0; i < 2 * KeyEventQueue.CAPACITY; i++) {
+            scheduler.runFrame();
+        }
+        assertEquals(CPU.getKeys(), 1 << 9);
+    }
+
+    @Test
+    public void testRewindKeepsHostKeys() {
+        Chip8CPU CPU = loopingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+        scheduler.setRewindBuffer(new RewindBuffer(1 << 20));
+        scheduler.setKeys(1 << 5);
+        scheduler.runFrame();
+        scheduler.runFrame();
+        scheduler.setKeys(0);
+        scheduler.runFrame();
+
+        // the frames stepped back to were recorded with the key held, but it is up now
+        scheduler.setRewinding(true);
+        scheduler.runFrame();
+        scheduler.runFrame();
+        assertEquals(CPU.getKeys(), 0);
+
+        // a key that goes down while rewinding reaches the CPU once play resumes
+        scheduler.setKeys(1 << 3);
+        scheduler.runFrame();
+        assertEquals(CPU.getKeys(), 0);
+        scheduler.setRewinding(false);
+        scheduler.runFrame();
+        assertEquals(CPU.getKeys(), 1 << 3);
+    }
+
+    @Test
+    public void testLoadStateKeepsHostKeys() {
+        Chip8CPU CPU = loopingCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 600, () -> {});
+        scheduler.setKeys(1 << 5);
+        scheduler.runFrame();
+        ByteBuffer state = ByteBuffer.allocate(Chip8CPU.STATE_SIZE);
+        CPU.saveState(state);
+        scheduler.setKeys(1 << 7);
+        scheduler.runFrame();
+
+        state.flip();
+        scheduler.loadState(state);
+        assertEquals(CPU.getKeys(), 1 << 7);
+    }
+}
@@ -0,0 +1,280 @@
+package screen;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+public class HeadlessRunner {
+    private static final int FRAME_RATE = 60;
+    private static final long FRAME_NANOS = 1_000_000_000L / FRAME_RATE;
+    private static final int MAX_ROM_SIZE = 4096 - 0x200;
+
+    private String romPath;
+    private long cycleLimit = -1;
+    private long frameLimit = -1;
+    private int instructionsPerFrame = 10;
+    // set by --clock; frames then run clockSpeed / 60 instructions with the remainder carried
+    private long clockSpeed;
+    private boolean throttled;
+    private EngineType engineType = EngineType.BLOCK;
+    private Long seed;
+    private String replayPath;
+    private String wavPath;
+
+    public static void main(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            runner.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            printUsage(System.err);
+            System.exit(2);
+        }
+        if (runner.replayPath != null) {
+            System.exit(runner.replay(System.out) ? 0 : 1);
+        }
+        try {
+            runner.run().print(System.out);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not read " + runner.romPath + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: HeadlessRunner [options] <rom>");
+        out.println("  --cycles N    stop after N instructions");
+        out.println("  --frames N    stop after N frames (default 600 if no limit is given)");
+        out.println("  --ipf N       instructions per 60 Hz frame (default 10)");
+        out.println("  --clock HZ    run at HZ instructions per second in real time");
+        out.println("  --throttle    pace frames at 60 Hz instead of running flat out");
+        out.println("  --engine E    interpreter, block, jit or aot (default block)");
+        out.println("  --seed N      seed for the CXKK random stream");
+        out.println("  --replay LOG  replay a recorded session flat out and check the final state");
+        out.println("  --wav FILE    write the sound timer's tone to a WAV file");
+    }
+
+    public void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cycles":
+                    cycleLimit = parseCount(args, ++i);
+                    break;
+                case "--frames":
+                    frameLimit = parseCount(args, ++i);
+                    break;
+                case "--ipf":
+                    instructionsPerFrame = (int) parseCount(args, ++i);
+                    clockSpeed = 0;
+                    break;
+                case "--clock":
+                    clockSpeed = parseCount(args, ++i);
+                    if (clockSpeed <= 0 || clockSpeed / FRAME_RATE > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Bad value for --clock: " + clockSpeed);
+                    }
+                    throttled = true;
+                    break;
+                case "--throttle":
+                    throttled = true;
+                    break;
+                case "--engine":
+                    engineType = parseEngine(args, ++i);
+                    break;
+                case "--seed":
+                    seed = parseCount(args, ++i);
+                    break;
+                case "--replay":
+                    if (++i >= args.length) {
+                        throw new IllegalArgumentException("--replay needs a value");
+                    }
+                    replayPath = args[i];
+                    break;
+                case "--wav":
+                    if (++i >= args.length) {
+                        throw new IllegalArgumentException("--wav needs a value");
+                    }
+                    wavPath = args[i];
+                    break;
+                default:
+                    if (args[i].startsWith("--") || romPath != null) {
+                        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                    }
+                    romPath = args[i];
+            }
+        }
+        if (romPath == null && replayPath == null) {
+            throw new IllegalArgumentException("No ROM given");
+        }
+        if (instructionsPerFrame <= 0) {
+            throw new IllegalArgumentException("--ipf must be positive");
+        }
+        if (cycleLimit < 0 && frameLimit < 0) {
+            frameLimit = 600;
+        }
+    }
+
+    private static long parseCount(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        try {
+            return Long.parseLong(args[i]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + args[i - 1] + ": " + args[i]);
+        }
+    }
+
+    private static EngineType parseEngine(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        try {
+            return EngineType.parse(args[i]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown engine " + args[i]);
+        }
+    }
+
+    public Report run() throws IOException {
+        byte[] rom = Files.readAllBytes(Paths.get(romPath));
+        if (rom.length > MAX_ROM_SIZE) {
+            throw new IOException("ROM is larger than " + MAX_ROM_SIZE + " bytes");
+        }
+        Chip8CPU CPU = new Chip8CPU();
+        if (seed != null) {
+            CPU.setSeed(seed);
+        }
+        CPU.initialize();
+        CPU.loadROM(rom);
+        return run(CPU);
+    }
+
+    // prints the replay report and returns whether it ended in the recorded state
+    public boolean replay(PrintStream out) {
+        InputReplay replay;
+        try {
+            replay = InputReplay.load(Paths.get(replayPath));
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not read " + replayPath + ": " + e.getMessage());
+            return false;
+        }
+        InputReplay.Result result = replay.run(engineType);
+        result.getReport().print(out);
+        out.printf("replay:       %s%n", result.isMatched() ? "match" : "MISMATCH");
+        return result.isMatched();
+    }
+
+    public Report run(Chip8CPU CPU) {
+        ExecutionEngine engine = engineType.create(CPU);
+        long cycles = 0;
+        long frames = 0;
+        long start = System.nanoTime();
+        long deadline = start;
+        long cycleRemainder = 0;
+        AudioOutput audio = openAudio();
+
+        while ((cycleLimit < 0 || cycles < cycleLimit) && (frameLimit < 0 || frames < frameLimit)) {
+            int frameCycles = instructionsPerFrame;
+            if (clockSpeed > 0) {
+                // the same cadence as FrameScheduler.nextFrameCycles, so every 60 frames
+                // add up to exactly clockSpeed
+                cycleRemainder += clockSpeed;
+                frameCycles = (int) (cycleRemainder / FRAME_RATE);
+                cycleRemainder -= (long) frameCycles * FRAME_RATE;
+            }
+            int count = frameCycles;
+            if (cycleLimit >= 0) {
+                count = (int) Math.min(count, cycleLimit - cycles);
+            }
+            cycles += engine.run(count);
+
+            if (count == frameCycles) {
+                boolean tone = CPU.getSoundTimer() > 0;
+                CPU.updateTimers();
+                if (audio != null) {
+                    audio.frame(tone);
+                }
+                frames++;
+            }
+
+            if (throttled) {
+                deadline += FRAME_NANOS;
+                long wait = deadline - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (audio != null) {
+            audio.close();
+        }
+
+        return new Report(cycles, frames, elapsed, CPU.framebufferHash());
+    }
+
+    // every frame reaches the file, however fast the run
+    private AudioOutput openAudio() {
+        if (wavPath == null) {
+            return null;
+        }
+        try {
+            AudioOutput audio = new AudioOutput(new WavSink(Paths.get(wavPath), AudioOutput.FORMAT),
+                    AudioOutput.DEFAULT_LATENCY_MILLIS, AudioOutput.DEFAULT_BUFFER_SAMPLES);
+            audio.start();
+            return audio;
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not write " + wavPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static class Report {
+        private final long cycles;
+        private final long frames;
+        private final long elapsedNanos;
+        private final long framebufferHash;
+
+        public Report(long cycles, long frames, long elapsedNanos, long framebufferHash) {
+            this.cycles = cycles;
+            this.frames = frames;
+            this.elapsedNanos = elapsedNanos;
+            this.framebufferHash = framebufferHash;
+        }
+
+        public double getInstructionsPerSecond() {
+            return cycles * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public double getFramesPerSecond() {
+            return frames * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public long getCycles() {
+            return cycles;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getFramebufferHash() {
+            return framebufferHash;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("instructions: %d%n", cycles);
+            out.printf("frames:       %d%n", frames);
+            out.printf("elapsed:      %.3f ms%n", elapsedNanos / 1e6);
+            out.printf("ips:          %.0f%n", getInstructionsPerSecond());
+            out.printf("fps:          %.1f%n", getFramesPerSecond());
+            out.printf("gfx hash:     %016x%n", framebufferHash);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package screen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Begins when the UI hands a key change to the scheduler and ends once the first
+// frame that saw it has run and been offered to the display
+@Name("screen.InputLatency")
+@Label("Input Latency")
+@Category("CHIP-8")
+@Description("Key change to the end of the first frame that reflects it")
+@Enabled(false)
+@StackTrace(false)
+final class InputLatencyEvent extends jdk.jfr.Event {
+    @Label("Keys")
+    @Description("Bit i is set while key i is held")
+    int keys;
+
+    @Label("Frame")
+    long frame;
+}
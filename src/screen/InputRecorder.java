@@ -0,0 +1,98 @@
+package screen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+// Records a session as the machine state it started from plus every change to
+// the held keys, numbered by frame. Execution is deterministic given the state
+// (which includes the random stream) and the frame clock, so that is enough for
+// InputReplay to reproduce the session exactly. A CRC of the final state is kept
+// to check the replay against.
+public class InputRecorder {
+    static final int MAGIC = 0x43384952;
+    static final int FORMAT_VERSION = 1;
+
+    private final byte[] initialState = new byte[Chip8CPU.STATE_SIZE];
+    private final long clockSpeed;
+    private final long cycleRemainder;
+    private final int initialKeys;
+    // frame delta as a varint followed by the 16 bit key mask, per change
+    private final ByteArrayOutputStream events = new ByteArrayOutputStream();
+    private int eventCount;
+    private long lastFrame;
+    private long frames = -1;
+    private long finalStateChecksum;
+
+    InputRecorder(Chip8CPU CPU, long clockSpeed, long cycleRemainder, int keys) {
+        CPU.saveState(ByteBuffer.wrap(initialState));
+        this.clockSpeed = clockSpeed;
+        this.cycleRemainder = cycleRemainder;
+        this.initialKeys = keys;
+    }
+
+    void keysChanged(long frame, int keys) {
+        long delta = frame - lastFrame;
+        while ((delta & ~0x7FL) != 0) {
+            events.write((int) (delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        events.write((int) delta);
+        events.write(keys >>> 8);
+        events.write(keys);
+        lastFrame = frame;
+        eventCount++;
+    }
+
+    void finish(Chip8CPU CPU, long frames) {
+        this.frames = frames;
+        this.finalStateChecksum = stateChecksum(CPU);
+    }
+
+    // leaves out the opcode latch so a replay on a different engine can still match
+    static long stateChecksum(Chip8CPU CPU) {
+        byte[] state = new byte[Chip8CPU.STATE_SIZE];
+        CPU.saveState(ByteBuffer.wrap(state));
+        CRC32 crc = new CRC32();
+        crc.update(state, 0, Chip8CPU.STATE_OPCODE_OFFSET);
+        crc.update(state, Chip8CPU.STATE_OPCODE_OFFSET + 4, state.length - Chip8CPU.STATE_OPCODE_OFFSET - 4);
+        return crc.getValue();
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        if (frames < 0) {
+            throw new IllegalStateException("Recording has not been stopped");
+        }
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(clockSpeed);
+        out.writeLong(cycleRemainder);
+        out.writeShort(initialKeys);
+        out.write(initialState);
+        out.writeLong(frames);
+        out.writeLong(finalStateChecksum);
+        out.writeInt(eventCount);
+        events.writeTo(out);
+        out.flush();
+    }
+
+    public void save(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(out);
+        }
+    }
+}
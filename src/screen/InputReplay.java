@@ -0,0 +1,122 @@
+package screen;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Plays back an InputRecorder log as fast as the engine allows, feeding each
+// key change in at the frame it was recorded on.
+public class InputReplay {
+    private final byte[] initialState;
+    private final long clockSpeed;
+    private final long cycleRemainder;
+    private final int initialKeys;
+    private final long frames;
+    private final long finalStateChecksum;
+    private final long[] eventFrames;
+    private final int[] eventKeys;
+
+    private InputReplay(byte[] initialState, long clockSpeed, long cycleRemainder, int initialKeys, long frames,
+                        long finalStateChecksum, long[] eventFrames, int[] eventKeys) {
+        this.initialState = initialState;
+        this.clockSpeed = clockSpeed;
+        this.cycleRemainder = cycleRemainder;
+        this.initialKeys = initialKeys;
+        this.frames = frames;
+        this.finalStateChecksum = finalStateChecksum;
+        this.eventFrames = eventFrames;
+        this.eventKeys = eventKeys;
+    }
+
+    public static InputReplay load(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    public static InputReplay read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != InputRecorder.MAGIC || in.readInt() != InputRecorder.FORMAT_VERSION) {
+            throw new IOException("Not an input recording");
+        }
+        long clockSpeed = in.readLong();
+        long cycleRemainder = in.readLong();
+        int initialKeys = in.readUnsignedShort();
+        byte[] initialState = new byte[Chip8CPU.STATE_SIZE];
+        in.readFully(initialState);
+        long frames = in.readLong();
+        long finalStateChecksum = in.readLong();
+        int count = in.readInt();
+        long[] eventFrames = new long[count];
+        int[] eventKeys = new int[count];
+        long frame = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            frame += delta;
+            eventFrames[i] = frame;
+            eventKeys[i] = in.readUnsignedShort();
+        }
+        return new InputReplay(initialState, clockSpeed, cycleRemainder, initialKeys, frames, finalStateChecksum,
+                eventFrames, eventKeys);
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getClockSpeed() {
+        return clockSpeed;
+    }
+
+    public Result run(EngineType engineType) {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadState(ByteBuffer.wrap(initialState));
+        FrameScheduler scheduler = new FrameScheduler(CPU, engineType.create(CPU), clockSpeed, () -> {});
+        scheduler.restore(cycleRemainder, initialKeys);
+
+        long start = System.nanoTime();
+        int next = 0;
+        for (long frame = 0; frame < frames; frame++) {
+            while (next < eventFrames.length && eventFrames[next] == frame) {
+                scheduler.setKeys(eventKeys[next++]);
+            }
+            scheduler.runFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        HeadlessRunner.Report report = new HeadlessRunner.Report(scheduler.getCycles(), scheduler.getFrames(), elapsed,
+                CPU.framebufferHash());
+        return new Result(report, InputRecorder.stateChecksum(CPU) == finalStateChecksum);
+    }
+
+    public static class Result {
+        private final HeadlessRunner.Report report;
+        private final boolean matched;
+
+        public Result(HeadlessRunner.Report report, boolean matched) {
+            this.report = report;
+            this.matched = matched;
+        }
+
+        public HeadlessRunner.Report getReport() {
+            return report;
+        }
+
+        // true when the replay ended in exactly the recorded final state
+        public boolean isMatched() {
+            return matched;
+        }
+    }
+}
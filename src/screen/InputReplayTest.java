@@ -0,0 +1,121 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InputReplayTest {
+
+    // 200: V1 = random & FF, 202: V2 += V1, 204: skip if key V0 up, 206: V3 += 1,
+    // 208: V0 += 1, 20A: V1 = F, 20C: V0 &= V1, 20E: jump 200
+    private static final byte[] ROM = {
+        (byte) 0xC1, (byte) 0xFF, (byte) 0x82, 0x14, (byte) 0xE0, (byte) 0xA1, 0x73, 0x01,
+        0x70, 0x01, 0x61, 0x0F, (byte) 0x80, 0x12, 0x12, 0x00
+    };
+
+    private static Chip8CPU seededCPU(long seed) {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.setSeed(seed);
+        CPU.initialize();
+        CPU.loadROM(ROM);
+        return CPU;
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private String aotCache;
+
+    // EngineType.AOT caches recompiled ROMs under chip8.aot.cache, here a temporary folder
+    @Before
+    public void init() throws IOException {
+        aotCache = System.getProperty("chip8.aot.cache");
+        System.setProperty("chip8.aot.cache", folder.newFolder("aot").toString());
+    }
+
+    @After
+    public void restoreCache() {
+        if (aotCache == null) {
+            System.clearProperty("chip8.aot.cache");
+        } else {
+            System.setProperty("chip8.aot.cache", aotCache);
+        }
+    }
+    @Test
+    public void testSeededRandomIsRepeatable() {
+        Chip8CPU first = seededCPU(1234);
+        Chip8CPU second = seededCPU(1234);
+        new Interpreter(first).run(600);
+        new BlockEngine(second).run(600);
+        assertEquals(first.getVRegisterAtIndex(2), second.getVRegisterAtIndex(2));
+
+        Chip8CPU other = seededCPU(4321);
+        new Interpreter(other).run(600);
+        assertNotEquals(first.getVRegisterAtIndex(2), other.getVRegisterAtIndex(2));
+    }
+
+    @Test
+    public void testRecordAndReplay() throws IOException {
+        Chip8CPU CPU = seededCPU(42);
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 700, () -> {});
+        for (int i = 0; i < 10; i++) {
+            scheduler.runFrame();
+        }
+
+        scheduler.startRecording();
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            if (i % 13 == 0) {
+                scheduler.setKeys(random.nextInt(1 << 16));
+            }
+            scheduler.runFrame();
+        }
+        InputRecorder recorder = scheduler.stopRecording();
+        assertFalse(scheduler.isRecording());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.write(out);
+        InputReplay replay = InputReplay.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(replay.getFrames(), 300);
+
+        // every engine has to land on the same final state
+        for (EngineType type : EngineType.values()) {
+            InputReplay.Result result = replay.run(type);
+            assertTrue(type.toString(), result.isMatched());
+            assertEquals(result.getReport().getFramebufferHash(), CPU.framebufferHash());
+        }
+    }
+
+    @Test
+    public void testDivergenceIsDetected() throws IOException {
+        Chip8CPU CPU = seededCPU(42);
+        FrameScheduler scheduler = new FrameScheduler(CPU, new Interpreter(CPU), 700, () -> {});
+        scheduler.startRecording();
+        for (int i = 0; i < 60; i++) {
+            scheduler.setKeys((i & 1) == 0 ? 0xFFFF : 0);
+            scheduler.runFrame();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scheduler.stopRecording().write(out);
+
+        // invert the last recorded key mask
+        byte[] log = out.toByteArray();
+        log[log.length - 1] ^= (byte) 0xFF;
+        log[log.length - 2] ^= (byte) 0xFF;
+        InputReplay replay = InputReplay.read(new ByteArrayInputStream(log));
+        assertFalse(replay.run(EngineType.INTERPRETER).isMatched());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotARecording() throws IOException {
+        InputReplay.read(new ByteArrayInputStream(new byte[64]));
+    }
+}
@@ -0,0 +1,32 @@
+package screen;
+
+final class Instruction {
+    final int opcode;
+    final Operation operation;
+    final int X;
+    final int Y;
+    final int N;
+    final int KK;
+    final int NNN;
+    // number of CHIP-8 instructions this entry executes; above one for superinstructions
+    final int length;
+
+    Instruction(int opcode, Operation operation) {
+        this(opcode, operation, 1);
+    }
+
+    Instruction(int opcode, Operation operation, int length) {
+        this.opcode = opcode;
+        this.operation = operation;
+        this.length = length;
+        this.X = (opcode & 0x0F00) >> 8;
+        this.Y = (opcode & 0x00F0) >> 4;
+        this.N = opcode & 0x000F;
+        this.KK = opcode & 0x00FF;
+        this.NNN = opcode & 0x0FFF;
+    }
+
+    void execute(Chip8CPU CPU) {
+        operation.execute(CPU, X, Y, N, KK, NNN);
+    }
+}
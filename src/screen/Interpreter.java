@@ -0,0 +1,16 @@
+package screen;
+
+public class Interpreter implements ExecutionEngine {
+    private final Chip8CPU CPU;
+
+    public Interpreter(Chip8CPU CPU) {
+        this.CPU = CPU;
+    }
+
+    public int run(int budget) {
+        for (int i = 0; i < budget; i++) {
+            CPU.emulateCPUCycle();
+        }
+        return budget;
+    }
+}
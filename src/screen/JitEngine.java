@@ -0,0 +1,52 @@
+package screen;
+
+// Tiered engine: blocks start out interpreted by BlockEngine and are compiled to
+// JVM bytecode once they have been entered compileThreshold times. Compiled code
+// goes away with its block when the block is invalidated by a memory write.
+public class JitEngine extends BlockEngine {
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+    // marks a block that has failed to compile or cannot be compiled
+    private static final int NEVER = Integer.MIN_VALUE;
+
+    private final BlockCompiler compiler = new BlockCompiler();
+    private final int compileThreshold;
+    private int compiledBlocks;
+
+    public JitEngine(Chip8CPU CPU) {
+        this(CPU, DEFAULT_COMPILE_THRESHOLD);
+    }
+
+    public JitEngine(Chip8CPU CPU, int compileThreshold) {
+        super(CPU);
+        this.compileThreshold = compileThreshold;
+    }
+
+    int execute(Block block) {
+        CompiledBlock compiled = block.compiled;
+        if (compiled != null) {
+            return compiled.execute(CPU);
+        }
+        if (++block.executions == compileThreshold) {
+            compile(block);
+        }
+        return super.execute(block);
+    }
+
+    private void compile(Block block) {
+        if (!BlockCompiler.canCompile(block)) {
+            block.executions = NEVER;
+            return;
+        }
+        try {
+            block.compiled = compiler.compile(block);
+            compiledBlocks++;
+        } catch (IllegalStateException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            block.executions = NEVER;
+        }
+    }
+
+    public int getCompiledBlocks() {
+        return compiledBlocks;
+    }
+}
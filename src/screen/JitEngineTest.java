@@ -0,0 +1,159 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JitEngineTest {
+
+    private static Chip8CPU load(int[] program) {
+        byte[] data = new byte[program.length * 2];
+        for (int i = 0; i < program.length; i++) {
+            data[2 * i] = (byte) (program[i] >> 8);
+            data[2 * i + 1] = (byte) program[i];
+        }
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(data);
+        return CPU;
+    }
+
+    // straight-line code and skips with operands that keep every memory access in range
+    static int[] randomProgram(Random random, int length) {
+        int[] program = new int[length];
+        int i = 0;
+        while (i < length - 2) {
+            int X = random.nextInt(16);
+            int Y = random.nextInt(16);
+            int KK = random.nextInt(256);
+            int data = 0x400 + random.nextInt(0x80);
+            switch (random.nextInt(12)) {
+                case 0:
+                    program[i++] = 0x6000 | X << 8 | KK;
+                    break;
+                case 1:
+                    program[i++] = 0x7000 | X << 8 | KK;
+                    break;
+                case 2:
+                    int[] arithmetic = {0, 1, 2, 3, 4, 5, 6, 7, 0xE};
+                    program[i++] = 0x8000 | X << 8 | Y << 4 | arithmetic[random.nextInt(arithmetic.length)];
+                    break;
+                case 3:
+                    int[] skips = {0x3000 | X << 8 | KK, 0x4000 | X << 8 | KK, 0x5000 | X << 8 | Y << 4, 0x9000 | X << 8 | Y << 4};
+                    program[i++] = skips[random.nextInt(skips.length)];
+                    break;
+                case 4:
+                    // forward or backward jump within the program
+                    program[i++] = 0x1000 | (0x200 + 2 * random.nextInt(length));
+                    break;
+                case 5:
+                    int[] timers = {0xF007, 0xF015, 0xF018, 0xF01E, 0xF029};
+                    program[i++] = timers[random.nextInt(timers.length)] | X << 8;
+                    break;
+                case 6:
+                    program[i++] = 0xA000 | data;
+                    program[i++] = 0xD000 | X << 8 | Y << 4 | random.nextInt(16);
+                    break;
+                case 7:
+                    int[] memory = {0xF033, 0xF055, 0xF065};
+                    program[i++] = 0xA000 | data;
+                    program[i++] = memory[random.nextInt(memory.length)] | X << 8;
+                    break;
+                case 8:
+                    program[i++] = 0x00E0;
+                    break;
+                default:
+                    program[i++] = 0x6000 | X << 8 | KK;
+            }
+        }
+        while (i < length) {
+            program[i++] = 0x1200;
+        }
+        return program;
+    }
+
+    private static void assertSameState(Chip8CPU expected, Chip8CPU actual) {
+        assertEquals(expected.getPC(), actual.getPC());
+        assertEquals(expected.getIndexRegister(), actual.getIndexRegister());
+        assertEquals(expected.getDelayTimer(), actual.getDelayTimer());
+        assertEquals(expected.getSoundTimer(), actual.getSoundTimer());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected.getVRegisterAtIndex(i), actual.getVRegisterAtIndex(i));
+        }
+        for (int i = 0x400; i < 0x490; i++) {
+            assertEquals(expected.getMemoryAtIndex(i), actual.getMemoryAtIndex(i));
+        }
+        assertEquals(expected.framebufferHash(), actual.framebufferHash());
+    }
+
+    @Test
+    public void testMatchesInterpreterOnRandomPrograms() {
+        Random random = new Random(8);
+        for (int program = 0; program < 200; program++) {
+            int[] code = randomProgram(random, 64);
+            Chip8CPU reference = load(code);
+            Chip8CPU target = load(code);
+            ExecutionEngine interpreter = new Interpreter(reference);
+            ExecutionEngine engine = new JitEngine(target, 1);
+
+            for (int step = 0; step < 50; step++) {
+                int budget = 1 + random.nextInt(40);
+                interpreter.run(budget);
+                engine.run(budget);
+                assertSameState(reference, target);
+            }
+        }
+    }
+
+    @Test
+    public void testSelfModifyingCode() {
+        int[] program = {
+            0x6A00,         // 200: VA = 0
+            0x7B01,         // 202: VB += 1
+            0x3B03,         // 204: skip if VB == 3
+            0x1200,         // 206: jump 200
+            0x606A,         // 208: V0 = 6A
+            0x6155,         // 20A: V1 = 55
+            0xA200,         // 20C: I = 200
+            0xF155,         // 20E: store V0..V1
+            0x6B00,         // 210: VB = 0
+            0x1200,         // 212: jump 200
+        };
+        Chip8CPU reference = load(program);
+        Chip8CPU target = load(program);
+        ExecutionEngine interpreter = new Interpreter(reference);
+        JitEngine engine = new JitEngine(target, 1);
+
+        for (int i = 0; i < 20; i++) {
+            interpreter.run(7);
+            engine.run(7);
+            assertSameState(reference, target);
+        }
+        assertEquals(0x55, target.getVRegisterAtIndex(0xA));
+        assertTrue(engine.getCompiledBlocks() > 0);
+    }
+
+    @Test
+    public void testIndirectJumpLeavesCompiledCode() {
+        int[] program = {
+            0x6004,         // 200: V0 = 4
+            0x7101,         // 202: V1 += 1
+            0xB200,         // 204: jump 200 + V0
+            0x7201,         // 206: V2 += 1 (skipped)
+            0x7301,         // 208: V3 += 1
+            0x1202,         // 20A: jump 202
+        };
+        Chip8CPU reference = load(program);
+        Chip8CPU target = load(program);
+        ExecutionEngine interpreter = new Interpreter(reference);
+        ExecutionEngine engine = new JitEngine(target, 1);
+
+        interpreter.run(100);
+        engine.run(100);
+
+        assertSameState(reference, target);
+        assertEquals(0, target.getVRegisterAtIndex(2));
+    }
+}
@@ -0,0 +1,55 @@
+package screen;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded ring of timestamped key edges between one producer (the UI thread) and
+// one consumer (the emulation thread). Each side only advances its own index, with
+// an ordered store after the slot is written or read, so neither side locks and an
+// event is only seen once it was completely written.
+final class KeyEventQueue {
+    static final int CAPACITY = 256;
+
+    private static final int MASK = CAPACITY - 1;
+    private static final int PRESSED = 0x10;
+
+    private final long[] times = new long[CAPACITY];
+    private final byte[] events = new byte[CAPACITY];
+    // next slot to write, advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to read, advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // false when the consumer has fallen CAPACITY events behind
+    boolean offer(int key, boolean pressed, long nanos) {
+        long t = tail.get();
+        if (t - head.get() == CAPACITY) {
+            return false;
+        }
+        int slot = (int) t & MASK;
+        times[slot] = nanos;
+        events[slot] = (byte) (key | (pressed ? PRESSED : 0));
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    // the peek methods look at the oldest event; only call them when not empty
+    int peekKey() {
+        return events[(int) head.get() & MASK] & 0xF;
+    }
+
+    boolean peekPressed() {
+        return (events[(int) head.get() & MASK] & PRESSED) != 0;
+    }
+
+    long peekTime() {
+        return times[(int) head.get() & MASK];
+    }
+
+    void poll() {
+        head.lazySet(head.get() + 1);
+    }
+}
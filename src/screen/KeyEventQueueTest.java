@@ -0,0 +1,54 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class KeyEventQueueTest {
+
+    @Test
+    public void testFullRing() {
+        KeyEventQueue queue = new KeyEventQueue();
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < KeyEventQueue.CAPACITY; i++) {
+            assertTrue(queue.offer(i & 0xF, (i & 1) == 0, i + 1));
+        }
+        assertFalse(queue.offer(3, true, 0));
+
+        assertEquals(queue.peekKey(), 0);
+        assertTrue(queue.peekPressed());
+        assertEquals(queue.peekTime(), 1);
+        queue.poll();
+        assertEquals(queue.peekKey(), 1);
+        assertFalse(queue.peekPressed());
+        // one slot freed, one more fits
+        assertTrue(queue.offer(3, true, 0));
+    }
+
+    @Test
+    public void testProducerAndConsumerThreads() throws InterruptedException {
+        KeyEventQueue queue = new KeyEventQueue();
+        int count = 1_000_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!queue.offer(i & 0xF, (i & 0x10) != 0, i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        // every event arrives once, in order, with the fields written together
+        for (int i = 0; i < count; i++) {
+            while (queue.isEmpty()) {
+                Thread.yield();
+            }
+            assertEquals(queue.peekTime(), i);
+            assertEquals(queue.peekKey(), i & 0xF);
+            assertEquals(queue.peekPressed(), (i & 0x10) != 0);
+            queue.poll();
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+package screen;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free histogram of durations in nanoseconds. Buckets are exact below 16 ns
+// and then split every power of two into 8, so a percentile is off by at most
+// 12.5%. Recording is one array increment; nothing is allocated.
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int LINEAR = 2 << SUB_BITS;
+    private static final int BUCKETS = ((63 - SUB_BITS) << SUB_BITS) + LINEAR;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return ((exponent - SUB_BITS) << SUB_BITS) + (int) (value >>> (exponent - SUB_BITS));
+    }
+
+    // largest value that falls into the bucket
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        long mantissa = (bucket & ((1 << SUB_BITS) - 1)) + (1 << SUB_BITS);
+        return ((mantissa + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // value at or below which the given fraction of recordings fall, 0 when empty
+    public long percentile(double fraction) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
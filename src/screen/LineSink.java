@@ -0,0 +1,39 @@
+package screen;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+// The default sound device. The line's buffer is the most audio that can be
+// queued ahead of the speaker, so its size is the latency target.
+public class LineSink implements AudioSink {
+    private final SourceDataLine line;
+
+    public LineSink(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, bufferBytes);
+        line.start();
+    }
+
+    @Override
+    public void write(byte[] data, int length) {
+        line.write(data, 0, length);
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+
+    @Override
+    public int queuedBytes() {
+        return line.getBufferSize() - line.available();
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
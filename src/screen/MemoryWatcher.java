@@ -0,0 +1,6 @@
+package screen;
+
+@FunctionalInterface
+interface MemoryWatcher {
+    void memoryWritten(int address, int length);
+}
@@ -0,0 +1,44 @@
+package screen;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Executions per instruction kind, named by mnemonics(). Only the emulation
+// thread counts, so an increment is a plain read and an ordered write instead of
+// an atomic add; any thread may read the counts while it runs.
+public final class OpcodeCounts {
+    private final AtomicLongArray counts = new AtomicLongArray(OpcodeTable.MNEMONICS.length);
+
+    void count(int opcode) {
+        int kind = OpcodeTable.kind(opcode);
+        counts.lazySet(kind, counts.get(kind) + 1);
+    }
+
+    // the first length opcodes of a block
+    void count(int[] opcodes, int length) {
+        for (int i = 0; i < length; i++) {
+            count(opcodes[i]);
+        }
+    }
+
+    public static String[] mnemonics() {
+        return OpcodeTable.MNEMONICS.clone();
+    }
+
+    public long get(String mnemonic) {
+        for (int kind = 0; kind < OpcodeTable.MNEMONICS.length; kind++) {
+            if (OpcodeTable.MNEMONICS[kind].equals(mnemonic)) {
+                return counts.get(kind);
+            }
+        }
+        throw new IllegalArgumentException("No instruction " + mnemonic);
+    }
+
+    // counts in the order of mnemonics()
+    public long[] snapshot() {
+        long[] values = new long[counts.length()];
+        for (int kind = 0; kind < values.length; kind++) {
+            values[kind] = counts.get(kind);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,184 @@
+package screen;
+
+final class OpcodeTable {
+    private static final Operation OP_00E0 = (CPU, X, Y, N, KK, NNN) -> CPU.OP00E0();
+    private static final Operation OP_00EE = (CPU, X, Y, N, KK, NNN) -> CPU.OP00EE();
+    private static final Operation OP_1NNN = (CPU, X, Y, N, KK, NNN) -> CPU.OP1NNN(NNN);
+    private static final Operation OP_2NNN = (CPU, X, Y, N, KK, NNN) -> CPU.OP2NNN(NNN);
+    private static final Operation OP_3XKK = (CPU, X, Y, N, KK, NNN) -> CPU.OP3XKK(X, KK);
+    private static final Operation OP_4XKK = (CPU, X, Y, N, KK, NNN) -> CPU.OP4XKK(X, KK);
+    private static final Operation OP_5XY0 = (CPU, X, Y, N, KK, NNN) -> CPU.OP5XY0(X, Y);
+    private static final Operation OP_6XKK = (CPU, X, Y, N, KK, NNN) -> CPU.OP6XKK(X, KK);
+    private static final Operation OP_7XKK = (CPU, X, Y, N, KK, NNN) -> CPU.OP7XKK(X, KK);
+    private static final Operation OP_8XY0 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY0(X, Y);
+    private static final Operation OP_8XY1 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY1(X, Y);
+    private static final Operation OP_8XY2 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY2(X, Y);
+    private static final Operation OP_8XY3 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY3(X, Y);
+    private static final Operation OP_8XY4 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY4(X, Y);
+    private static final Operation OP_8XY5 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY5(X, Y);
+    private static final Operation OP_8XY6 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY6(X);
+    private static final Operation OP_8XY7 = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XY7(X, Y);
+    private static final Operation OP_8XYE = (CPU, X, Y, N, KK, NNN) -> CPU.OP8XYE(X);
+    private static final Operation OP_9XY0 = (CPU, X, Y, N, KK, NNN) -> CPU.OP9XY0(X, Y);
+    private static final Operation OP_ANNN = (CPU, X, Y, N, KK, NNN) -> CPU.OPANNN(NNN);
+    private static final Operation OP_BNNN = (CPU, X, Y, N, KK, NNN) -> CPU.OPBNNN(NNN);
+    private static final Operation OP_CXKK = (CPU, X, Y, N, KK, NNN) -> CPU.OPCXKK(X, KK);
+    private static final Operation OP_DXYN = (CPU, X, Y, N, KK, NNN) -> CPU.OPDXYN(X, Y, N);
+    private static final Operation OP_EX9E = (CPU, X, Y, N, KK, NNN) -> CPU.OPEX9E(X);
+    private static final Operation OP_EXA1 = (CPU, X, Y, N, KK, NNN) -> CPU.OPEXA1(X);
+    private static final Operation OP_FX07 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX07(X);
+    private static final Operation OP_FX0A = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX0A(X);
+    private static final Operation OP_FX15 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX15(X);
+    private static final Operation OP_FX18 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX18(X);
+    private static final Operation OP_FX1E = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX1E(X);
+    private static final Operation OP_FX29 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX29(X);
+    private static final Operation OP_FX33 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX33(X);
+    private static final Operation OP_FX55 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX55(X);
+    private static final Operation OP_FX65 = (CPU, X, Y, N, KK, NNN) -> CPU.OPFX65(X);
+
+    private static final Operation[] OPERATIONS = {
+        OP_00E0, OP_00EE, OP_1NNN, OP_2NNN, OP_3XKK, OP_4XKK, OP_5XY0, OP_6XKK, OP_7XKK,
+        OP_8XY0, OP_8XY1, OP_8XY2, OP_8XY3, OP_8XY4, OP_8XY5, OP_8XY6, OP_8XY7, OP_8XYE,
+        OP_9XY0, OP_ANNN, OP_BNNN, OP_CXKK, OP_DXYN, OP_EX9E, OP_EXA1,
+        OP_FX07, OP_FX0A, OP_FX15, OP_FX18, OP_FX1E, OP_FX29, OP_FX33, OP_FX55, OP_FX65
+    };
+    // name of each kind() in the order of OPERATIONS, unknown opcodes last
+    static final String[] MNEMONICS = {
+        "00E0", "00EE", "1NNN", "2NNN", "3XKK", "4XKK", "5XY0", "6XKK", "7XKK",
+        "8XY0", "8XY1", "8XY2", "8XY3", "8XY4", "8XY5", "8XY6", "8XY7", "8XYE",
+        "9XY0", "ANNN", "BNNN", "CXKK", "DXYN", "EX9E", "EXA1",
+        "FX07", "FX0A", "FX15", "FX18", "FX1E", "FX29", "FX33", "FX55", "FX65", "unknown"
+    };
+
+    // one pre-decoded entry per 16-bit opcode, shared by every CPU
+    private static final Instruction[] TABLE = new Instruction[0x10000];
+    private static final byte[] KINDS = new byte[0x10000];
+
+    static {
+        for (int opcode = 0; opcode < TABLE.length; opcode++) {
+            Operation operation = operationFor(opcode);
+            TABLE[opcode] = new Instruction(opcode, operation != null ? operation : unknown(opcode));
+            int kind = 0;
+            while (kind < OPERATIONS.length && OPERATIONS[kind] != operation) {
+                kind++;
+            }
+            KINDS[opcode] = (byte) kind;
+        }
+    }
+
+    private OpcodeTable() {
+    }
+
+    static Instruction get(int opcode) {
+        return TABLE[opcode];
+    }
+
+    // index into MNEMONICS
+    static int kind(int opcode) {
+        return KINDS[opcode];
+    }
+
+    static boolean isKnown(int opcode) {
+        return operationFor(opcode) != null;
+    }
+
+    private static Operation unknown(int opcode) {
+        return (CPU, X, Y, N, KK, NNN) -> CPU.fault(opcode);
+    }
+
+    private static Operation operationFor(int opcode) {
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                switch (opcode) {
+                    case 0x00E0:
+                        return OP_00E0;
+                    case 0x00EE:
+                        return OP_00EE;
+                }
+                break;
+            case 0x1000:
+                return OP_1NNN;
+            case 0x2000:
+                return OP_2NNN;
+            case 0x3000:
+                return OP_3XKK;
+            case 0x4000:
+                return OP_4XKK;
+            case 0x5000:
+                if ((opcode & 0x000F) == 0) {
+                    return OP_5XY0;
+                }
+                break;
+            case 0x6000:
+                return OP_6XKK;
+            case 0x7000:
+                return OP_7XKK;
+            case 0x8000:
+                switch (opcode & 0x000F) {
+                    case 0x0:
+                        return OP_8XY0;
+                    case 0x1:
+                        return OP_8XY1;
+                    case 0x2:
+                        return OP_8XY2;
+                    case 0x3:
+                        return OP_8XY3;
+                    case 0x4:
+                        return OP_8XY4;
+                    case 0x5:
+                        return OP_8XY5;
+                    case 0x6:
+                        return OP_8XY6;
+                    case 0x7:
+                        return OP_8XY7;
+                    case 0xE:
+                        return OP_8XYE;
+                }
+                break;
+            case 0x9000:
+                if ((opcode & 0x000F) == 0) {
+                    return OP_9XY0;
+                }
+                break;
+            case 0xA000:
+                return OP_ANNN;
+            case 0xB000:
+                return OP_BNNN;
+            case 0xC000:
+                return OP_CXKK;
+            case 0xD000:
+                return OP_DXYN;
+            case 0xE000:
+                switch (opcode & 0x00FF) {
+                    case 0x9E:
+                        return OP_EX9E;
+                    case 0xA1:
+                        return OP_EXA1;
+                }
+                break;
+            case 0xF000:
+                switch (opcode & 0x00FF) {
+                    case 0x07:
+                        return OP_FX07;
+                    case 0x0A:
+                        return OP_FX0A;
+                    case 0x15:
+                        return OP_FX15;
+                    case 0x18:
+                        return OP_FX18;
+                    case 0x1E:
+                        return OP_FX1E;
+                    case 0x29:
+                        return OP_FX29;
+                    case 0x33:
+                        return OP_FX33;
+                    case 0x55:
+                        return OP_FX55;
+                    case 0x65:
+                        return OP_FX65;
+                }
+                break;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,6 @@
+package screen;
+
+@FunctionalInterface
+interface Operation {
+    void execute(Chip8CPU CPU, int X, int Y, int N, int KK, int NNN);
+}
@@ -0,0 +1,171 @@
+package screen;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+// Debug window beside the main one: a 64x64 heatmap of the 4 KiB address space,
+// one cell per byte, and the loops that executed the most instructions. Counts
+// are copied out of the profile a few times a second on the FX thread.
+public class ProfilerView {
+    private static final int COLUMNS = 64;
+    private static final int ROWS = ExecutionProfile.MEMORY_SIZE / COLUMNS;
+    private static final int CELL = 6;
+    private static final int TOP_LOOPS = 10;
+    private static final long REFRESH_NANOS = 250_000_000L;
+    private static final String EXECUTIONS = "Executions";
+    private static final String READS = "Reads";
+    private static final String WRITES = "Writes";
+
+    private final ExecutionProfile profile;
+    // the machine the profile is counting, for reading the jumps that close loops
+    private final Supplier<Chip8CPU> CPU;
+    private final Stage stage = new Stage();
+    private final Canvas canvas = new Canvas(COLUMNS * CELL, ROWS * CELL);
+    private final GraphicsContext gContext = canvas.getGraphicsContext2D();
+    private final WritableImage heatmap = new WritableImage(COLUMNS, ROWS);
+    private final int[] pixels = new int[ExecutionProfile.MEMORY_SIZE];
+    private final long[] counts = new long[ExecutionProfile.MEMORY_SIZE];
+    private final long[] executions = new long[ExecutionProfile.MEMORY_SIZE];
+    private final ChoiceBox<String> mode = new ChoiceBox<String>(
+            FXCollections.observableArrayList(EXECUTIONS, READS, WRITES));
+    private final Label status = new Label();
+    private final ObservableList<String> loops = FXCollections.observableArrayList();
+    private int hovered = -1;
+    private long refreshed;
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (now - refreshed >= REFRESH_NANOS) {
+                refresh();
+                refreshed = now;
+            }
+        }
+    };
+
+    public ProfilerView(ExecutionProfile profile, Supplier<Chip8CPU> CPU, Window owner, Runnable reset,
+                        Runnable closed) {
+        this.profile = profile;
+        this.CPU = CPU;
+
+        mode.setValue(EXECUTIONS);
+        mode.setOnAction(event -> refresh());
+        Button clear = new Button("Reset");
+        clear.setOnAction(event -> reset.run());
+        canvas.setOnMouseMoved(event -> {
+            int x = (int) (event.getX() / CELL);
+            int y = (int) (event.getY() / CELL);
+            hovered = x >= 0 && x < COLUMNS && y >= 0 && y < ROWS ? y * COLUMNS + x : -1;
+            showStatus();
+        });
+        canvas.setOnMouseExited(event -> {
+            hovered = -1;
+            showStatus();
+        });
+        gContext.setImageSmoothing(false);
+
+        HBox controls = new HBox(8, mode, clear, status);
+        controls.setPadding(new Insets(4));
+        ListView<String> list = new ListView<String>(loops);
+        list.setPrefHeight(TOP_LOOPS * 24 + 4);
+        list.setStyle("-fx-font-family: monospace");
+        VBox center = new VBox(canvas, new Label(" Hot loops"), list);
+        BorderPane pane = new BorderPane(center);
+        pane.setTop(controls);
+
+        stage.initOwner(owner);
+        stage.setTitle("Profiler");
+        stage.setScene(new Scene(pane));
+        stage.setOnHidden(event -> {
+            timer.stop();
+            closed.run();
+        });
+    }
+
+    public void show() {
+        Window owner = stage.getOwner();
+        if (!stage.isShowing() && owner != null) {
+            stage.setX(owner.getX() + owner.getWidth());
+            stage.setY(owner.getY());
+        }
+        stage.show();
+        stage.toFront();
+        refreshed = 0;
+        timer.start();
+    }
+
+    public void hide() {
+        stage.hide();
+    }
+
+    private void refresh() {
+        profile.copyExecutions(executions);
+        String selected = mode.getValue();
+        if (EXECUTIONS.equals(selected)) {
+            System.arraycopy(executions, 0, counts, 0, counts.length);
+        } else if (READS.equals(selected)) {
+            profile.copyReads(counts);
+        } else {
+            profile.copyWrites(counts);
+        }
+        drawHeatmap();
+        showStatus();
+
+        List<ExecutionProfile.HotLoop> hot = ExecutionProfile.hotLoops(executions, CPU.get(), TOP_LOOPS);
+        long total = 0;
+        for (long count : executions) {
+            total += count;
+        }
+        loops.clear();
+        for (ExecutionProfile.HotLoop loop : hot) {
+            loops.add(String.format("%03X-%03X %5.1f%% %,15d instr %,12d iter", loop.getStart(), loop.getEnd() - 1,
+                    total == 0 ? 0.0 : 100.0 * loop.getInstructions() / total,
+                    loop.getInstructions(), loop.getIterations()));
+        }
+    }
+
+    // log scale from black through red and yellow to white, relative to the hottest cell
+    private void drawHeatmap() {
+        long max = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+        }
+        double scale = max == 0 ? 0 : 1 / Math.log1p(max);
+        for (int a = 0; a < counts.length; a++) {
+            int heat = (int) (Math.log1p(counts[a]) * scale * 765);
+            int red = Math.min(heat, 255);
+            int green = Math.min(Math.max(heat - 255, 0), 255);
+            int blue = Math.max(heat - 510, 0);
+            pixels[a] = 0xFF000000 | red << 16 | green << 8 | blue;
+        }
+        heatmap.getPixelWriter().setPixels(0, 0, COLUMNS, ROWS, PixelFormat.getIntArgbPreInstance(),
+                pixels, 0, COLUMNS);
+        gContext.drawImage(heatmap, 0, 0, COLUMNS * CELL, ROWS * CELL);
+    }
+
+    private void showStatus() {
+        if (hovered < 0) {
+            status.setText("");
+            return;
+        }
+        status.setText(String.format("%03X: %,d", hovered, counts[hovered]));
+    }
+}
@@ -0,0 +1,20 @@
+package screen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One repaint of the canvas on the FX thread
+@Name("screen.Render")
+@Label("Render")
+@Category("CHIP-8")
+@Enabled(false)
+@StackTrace(false)
+final class RenderEvent extends jdk.jfr.Event {
+    @Label("Rows")
+    @Description("Framebuffer rows uploaded, first dirty row to last")
+    int rows;
+}
@@ -0,0 +1,27 @@
+package screen;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// A ROM load or restart; the event spans the work done to bring the machine back up
+@Name("screen.Reset")
+@Label("Machine Reset")
+@Category("CHIP-8")
+@Enabled(false)
+final class ResetEvent extends jdk.jfr.Event {
+    static final String LOAD = "load";
+    static final String RESTART = "restart";
+
+    @Label("Kind")
+    String kind;
+
+    @Label("ROM Size")
+    @DataAmount
+    int romSize;
+
+    @Label("Engine")
+    String engine;
+}
@@ -0,0 +1,177 @@
+package screen;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Per-frame history kept as backward deltas in a fixed byte ring. Each frame's
+// save state is compared with the previous one in small chunks, so memory pages
+// and framebuffer rows that did not change cost nothing, and the entry keeps the
+// old contents of the chunks that did. Rewinding pops the newest entry back into
+// the reference state. When the ring is full the oldest frames are dropped.
+// Nothing is allocated after construction.
+public class RewindBuffer {
+    static final int CHUNK_SIZE = 32;
+    private static final int CHUNKS = (Chip8CPU.STATE_SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    private static final int MASK_WORDS = (CHUNKS + 63) / 64;
+    // length before and after the entry, so the ring can be walked from both ends
+    private static final int OVERHEAD = 4 + MASK_WORDS * 8 + 4;
+    static final int MAX_ENTRY_SIZE = OVERHEAD + CHUNKS * CHUNK_SIZE;
+
+    private final byte[] ring;
+    // state of the most recently recorded or restored frame
+    private final byte[] reference = new byte[CHUNKS * CHUNK_SIZE];
+    private final byte[] scratch = new byte[CHUNKS * CHUNK_SIZE];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+    private final ByteBuffer referenceBuffer = ByteBuffer.wrap(reference);
+    private final long[] changed = new long[MASK_WORDS];
+    private boolean hasReference;
+    // oldest entry starts at tail, the next one is written at head
+    private int head;
+    private int tail;
+    private int used;
+    private int frames;
+
+    public RewindBuffer(int capacity) {
+        if (capacity < MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Rewind buffer needs at least " + MAX_ENTRY_SIZE + " bytes");
+        }
+        ring = new byte[capacity];
+    }
+
+    // called once per frame on the emulation thread
+    public void record(Chip8CPU CPU) {
+        scratchBuffer.clear();
+        CPU.saveState(scratchBuffer);
+        if (!hasReference) {
+            System.arraycopy(scratch, 0, reference, 0, reference.length);
+            hasReference = true;
+            return;
+        }
+
+        Arrays.fill(changed, 0L);
+        int count = 0;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int from = chunk * CHUNK_SIZE;
+            if (!Arrays.equals(scratch, from, from + CHUNK_SIZE, reference, from, from + CHUNK_SIZE)) {
+                changed[chunk >> 6] |= 1L << chunk;
+                count++;
+            }
+        }
+
+        int size = OVERHEAD + count * CHUNK_SIZE;
+        while (ring.length - used < size) {
+            dropOldest();
+        }
+        putInt(head, size);
+        int position = advance(head, 4);
+        for (int i = 0; i < MASK_WORDS; i++) {
+            putLong(position, changed[i]);
+            position = advance(position, 8);
+        }
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            if ((changed[chunk >> 6] & (1L << chunk)) != 0) {
+                int from = chunk * CHUNK_SIZE;
+                write(position, reference, from, CHUNK_SIZE);
+                System.arraycopy(scratch, from, reference, from, CHUNK_SIZE);
+                position = advance(position, CHUNK_SIZE);
+            }
+        }
+        putInt(position, size);
+        head = advance(position, 4);
+        used += size;
+        frames++;
+    }
+
+    // restores the frame before the current one; false when the history is empty
+    public boolean rewind(Chip8CPU CPU) {
+        if (frames == 0) {
+            return false;
+        }
+        int size = getInt(advance(head, -4));
+        int start = advance(head, -size);
+        int position = advance(start, 4);
+        for (int i = 0; i < MASK_WORDS; i++) {
+            changed[i] = getLong(position);
+            position = advance(position, 8);
+        }
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            if ((changed[chunk >> 6] & (1L << chunk)) != 0) {
+                read(position, reference, chunk * CHUNK_SIZE, CHUNK_SIZE);
+                position = advance(position, CHUNK_SIZE);
+            }
+        }
+        head = start;
+        used -= size;
+        frames--;
+
+        referenceBuffer.clear();
+        CPU.loadState(referenceBuffer);
+        return true;
+    }
+
+    public void clear() {
+        head = 0;
+        tail = 0;
+        used = 0;
+        frames = 0;
+        hasReference = false;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public int getUsedBytes() {
+        return used;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    private void dropOldest() {
+        int size = getInt(tail);
+        tail = advance(tail, size);
+        used -= size;
+        frames--;
+    }
+
+    private int advance(int position, int delta) {
+        return Math.floorMod(position + delta, ring.length);
+    }
+
+    private void write(int position, byte[] source, int offset, int length) {
+        int first = Math.min(length, ring.length - position);
+        System.arraycopy(source, offset, ring, position, first);
+        System.arraycopy(source, offset + first, ring, 0, length - first);
+    }
+
+    private void read(int position, byte[] target, int offset, int length) {
+        int first = Math.min(length, ring.length - position);
+        System.arraycopy(ring, position, target, offset, first);
+        System.arraycopy(ring, 0, target, offset + first, length - first);
+    }
+
+    private void putInt(int position, int value) {
+        for (int i = 0; i < 4; i++) {
+            ring[advance(position, i)] = (byte) (value >>> (24 - 8 * i));
+        }
+    }
+
+    private int getInt(int position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | (ring[advance(position, i)] & 0xFF);
+        }
+        return value;
+    }
+
+    private void putLong(int position, long value) {
+        putInt(position, (int) (value >>> 32));
+        putInt(advance(position, 4), (int) value);
+    }
+
+    private long getLong(int position) {
+        return (long) getInt(position) << 32 | (getInt(advance(position, 4)) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,118 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RewindBufferTest {
+
+    // draws a moving sprite and counts in V0 so every frame differs
+    private static final byte[] ROM = {
+        0x00, (byte) 0xE0,          // 200: CLS
+        (byte) 0xA0, 0x00,          // 202: I = font 0
+        (byte) 0xD0, 0x15,          // 204: draw V0, V1
+        0x70, 0x01,                 // 206: V0 += 1
+        0x71, 0x01,                 // 208: V1 += 1
+        (byte) 0xF0, 0x55,          // 20A: store V0 at I
+        0x12, 0x00,                 // 20C: jump 200
+    };
+
+    private static Chip8CPU startCPU() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(ROM);
+        return CPU;
+    }
+
+    private static byte[] snapshot(Chip8CPU CPU) {
+        ByteBuffer buffer = ByteBuffer.allocate(Chip8CPU.STATE_SIZE);
+        CPU.saveState(buffer);
+        return buffer.array();
+    }
+
+    @Test
+    public void testRewindRestoresEveryFrame() {
+        Chip8CPU CPU = startCPU();
+        BlockEngine engine = new BlockEngine(CPU);
+        RewindBuffer rewind = new RewindBuffer(1 << 20);
+        List<byte[]> history = new ArrayList<byte[]>();
+
+        rewind.record(CPU);
+        history.add(snapshot(CPU));
+        for (int frame = 0; frame < 50; frame++) {
+            engine.run(7);
+            CPU.updateTimers();
+            rewind.record(CPU);
+            history.add(snapshot(CPU));
+        }
+        assertEquals(rewind.getFrames(), 50);
+
+        for (int frame = 49; frame >= 0; frame--) {
+            assertTrue(rewind.rewind(CPU));
+            assertArrayEquals(snapshot(CPU), history.get(frame));
+        }
+        assertFalse(rewind.rewind(CPU));
+    }
+
+    @Test
+    public void testDeltasAreSmall() {
+        Chip8CPU CPU = startCPU();
+        BlockEngine engine = new BlockEngine(CPU);
+        RewindBuffer rewind = new RewindBuffer(1 << 20);
+        rewind.record(CPU);
+        for (int frame = 0; frame < 100; frame++) {
+            engine.run(7);
+            rewind.record(CPU);
+        }
+        // registers, one memory chunk and a few framebuffer chunks per frame
+        assertTrue(rewind.getUsedBytes() / rewind.getFrames() < 400);
+    }
+
+    @Test
+    public void testOldestFramesDropped() {
+        Chip8CPU CPU = startCPU();
+        BlockEngine engine = new BlockEngine(CPU);
+        RewindBuffer rewind = new RewindBuffer(RewindBuffer.MAX_ENTRY_SIZE + 1000);
+        rewind.record(CPU);
+        List<byte[]> history = new ArrayList<byte[]>();
+        for (int frame = 0; frame < 500; frame++) {
+            history.add(snapshot(CPU));
+            engine.run(7);
+            rewind.record(CPU);
+            assertTrue(rewind.getUsedBytes() <= rewind.getCapacity());
+        }
+
+        // whatever is left still replays correctly, newest first
+        int frames = rewind.getFrames();
+        assertTrue(frames > 0 && frames < 500);
+        for (int i = 1; i <= frames; i++) {
+            assertTrue(rewind.rewind(CPU));
+            assertArrayEquals(snapshot(CPU), history.get(500 - i));
+        }
+        assertFalse(rewind.rewind(CPU));
+    }
+
+    @Test
+    public void testSchedulerRewinds() {
+        Chip8CPU CPU = startCPU();
+        FrameScheduler scheduler = new FrameScheduler(CPU, new BlockEngine(CPU), 600, () -> {});
+        scheduler.setRewindBuffer(new RewindBuffer(1 << 20));
+        byte[] start = null;
+        for (int i = 0; i < 20; i++) {
+            scheduler.runFrame();
+            if (i == 9) {
+                start = snapshot(CPU);
+            }
+        }
+        scheduler.setRewinding(true);
+        for (int i = 0; i < 10; i++) {
+            scheduler.runFrame();
+        }
+        assertArrayEquals(snapshot(CPU), start);
+        assertEquals(scheduler.getCycles(), 200);
+    }
+}
@@ -0,0 +1,100 @@
+package screen;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.scene.Scene;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// Window over the ROM library. The list is filtered on every keystroke from the
+// in-memory index; Enter or a double click plays the selected ROM.
+public class RomBrowser {
+    private final RomLibrary library;
+    private final Consumer<RomEntry> player;
+    private final ObservableList<RomEntry> entries = FXCollections.observableArrayList();
+    private final FilteredList<RomEntry> filtered = new FilteredList<RomEntry>(entries);
+    private final Stage stage = new Stage();
+    private final TextField search = new TextField();
+    private final ListView<RomEntry> list = new ListView<RomEntry>(filtered);
+
+    public RomBrowser(RomLibrary library, Window owner, Consumer<RomEntry> player) {
+        this.library = library;
+        this.player = player;
+
+        search.setPromptText("Search");
+        search.textProperty().addListener((observable, old, text) -> applyFilter(text));
+        // Enter in the search field plays the first match
+        search.setOnAction(event -> {
+            if (list.getSelectionModel().isEmpty()) {
+                list.getSelectionModel().selectFirst();
+            }
+            play();
+        });
+        list.setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2) {
+                play();
+            }
+        });
+        list.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ENTER) {
+                play();
+            }
+        });
+
+        BorderPane pane = new BorderPane(list);
+        pane.setTop(search);
+        stage.initOwner(owner);
+        stage.setTitle("ROM Library - " + library.getRoot());
+        stage.setScene(new Scene(pane, 400, 480));
+
+        // the library reports changes from its own thread
+        library.setChangeListener(() -> Platform.runLater(this::refresh));
+        refresh();
+    }
+
+    public void show() {
+        stage.show();
+        stage.toFront();
+        search.requestFocus();
+    }
+
+    private void refresh() {
+        RomEntry selected = list.getSelectionModel().getSelectedItem();
+        entries.setAll(library.getEntries());
+        if (selected != null) {
+            for (RomEntry entry : filtered) {
+                if (entry.getPath().equals(selected.getPath())) {
+                    list.getSelectionModel().select(entry);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void applyFilter(String text) {
+        String needle = text.trim().toLowerCase(Locale.ROOT);
+        if (needle.isEmpty()) {
+            filtered.setPredicate(null);
+        } else {
+            filtered.setPredicate(entry -> entry.getTitle().toLowerCase(Locale.ROOT).contains(needle)
+                    || entry.getPath().toLowerCase(Locale.ROOT).contains(needle));
+        }
+    }
+
+    private void play() {
+        RomEntry entry = list.getSelectionModel().getSelectedItem();
+        if (entry != null) {
+            stage.hide();
+            player.accept(entry);
+        }
+    }
+}
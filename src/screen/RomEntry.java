@@ -0,0 +1,170 @@
+package screen;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+// One ROM in the library index. Size and modification time decide whether the
+// file has to be hashed again on the next scan; the settings it was last played
+// with survive rescans of an unchanged file.
+public final class RomEntry {
+    public enum Platform {
+        CHIP8("CHIP-8"),
+        SCHIP("SUPER-CHIP"),
+        XOCHIP("XO-CHIP");
+
+        private final String displayName;
+
+        Platform(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    // path relative to the library root, with '/' separators
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+    private final String title;
+    private final Platform platform;
+    // 0 until the ROM has been played
+    private final long lastPlayed;
+    // 0 for the default clock speed
+    private final long clockSpeed;
+    // null for the default engine
+    private final EngineType engine;
+
+    RomEntry(String path, long size, long lastModified, String hash, String title, Platform platform,
+             long lastPlayed, long clockSpeed, EngineType engine) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+        this.title = title;
+        this.platform = platform;
+        this.lastPlayed = lastPlayed;
+        this.clockSpeed = clockSpeed;
+        this.engine = engine;
+    }
+
+    static RomEntry create(String path, long lastModified, byte[] rom) {
+        return new RomEntry(path, rom.length, lastModified, AotCache.hash(rom), title(path), detect(path, rom),
+                0, 0, null);
+    }
+
+    RomEntry played(long when, long clockSpeed, EngineType engine) {
+        return new RomEntry(path, size, lastModified, hash, title, platform, when, clockSpeed, engine);
+    }
+
+    // keeps the play history of an entry whose file was replaced
+    RomEntry withHistoryOf(RomEntry old) {
+        return new RomEntry(path, size, lastModified, hash, title, platform, old.lastPlayed, old.clockSpeed, old.engine);
+    }
+
+    // "games/Space_Invaders.ch8" becomes "Space Invaders"
+    static String title(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return name.replace('_', ' ').trim();
+    }
+
+    // the extension decides when it names a platform; otherwise the ROM is searched
+    // for opcodes that only the extended machines have
+    static Platform detect(String path, byte[] rom) {
+        String lower = path.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".xo8")) {
+            return Platform.XOCHIP;
+        }
+        if (lower.endsWith(".sc8")) {
+            return Platform.SCHIP;
+        }
+        Platform platform = Platform.CHIP8;
+        for (int i = 0; i + 1 < rom.length; i += 2) {
+            int opcode = (rom[i] & 0xFF) << 8 | (rom[i + 1] & 0xFF);
+            // F000 NNNN long index load and F002 audio pattern
+            if (opcode == 0xF000 || opcode == 0xF002) {
+                return Platform.XOCHIP;
+            }
+            // 00FE/00FF resolution switch, 00FB/00FC horizontal scroll
+            if (opcode == 0x00FE || opcode == 0x00FF || opcode == 0x00FB || opcode == 0x00FC) {
+                platform = Platform.SCHIP;
+            }
+        }
+        return platform;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(path);
+        out.writeLong(size);
+        out.writeLong(lastModified);
+        out.writeUTF(hash);
+        out.writeUTF(title);
+        out.writeByte(platform.ordinal());
+        out.writeLong(lastPlayed);
+        out.writeLong(clockSpeed);
+        out.writeUTF(engine == null ? "" : engine.name());
+    }
+
+    static RomEntry read(DataInputStream in) throws IOException {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        String hash = in.readUTF();
+        String title = in.readUTF();
+        Platform platform = Platform.values()[in.readUnsignedByte()];
+        long lastPlayed = in.readLong();
+        long clockSpeed = in.readLong();
+        String engine = in.readUTF();
+        return new RomEntry(path, size, lastModified, hash, title, platform, lastPlayed, clockSpeed,
+                engine.isEmpty() ? null : EngineType.valueOf(engine));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Platform getPlatform() {
+        return platform;
+    }
+
+    public long getLastPlayed() {
+        return lastPlayed;
+    }
+
+    public long getClockSpeed() {
+        return clockSpeed;
+    }
+
+    public EngineType getEngine() {
+        return engine;
+    }
+
+    @Override
+    public String toString() {
+        return title + " (" + platform.getDisplayName() + ")";
+    }
+}
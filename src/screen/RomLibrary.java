@@ -0,0 +1,375 @@
+package screen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// A directory tree of ROMs with a persistent index. Opening the library only
+// reads the index; scan() stats every file and hashes only those whose size or
+// modification time changed, and watch() keeps the index current from file
+// system events after that. ROM bytes are served from an LRU cache bounded in
+// bytes, so switching between recently played games never touches the disk.
+public class RomLibrary implements Closeable {
+    public static final String INDEX_NAME = ".chip8-index";
+    // everything from 0x200 to the end of memory
+    public static final int MAX_ROM_SIZE = 4096 - 512;
+    public static final int DEFAULT_CACHE_BYTES = 4 << 20;
+    private static final String[] EXTENSIONS = {".ch8", ".c8", ".sc8", ".xo8", ".rom"};
+    private static final int MAGIC = 0x4338494C;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path root;
+    private final Path indexFile;
+    // guards the index file; separate from the monitor close() holds while joining the watcher
+    private final Object indexLock = new Object();
+    // keyed by path relative to the root
+    private final Map<String, RomEntry> entries = new ConcurrentHashMap<String, RomEntry>();
+    private final int maxCacheBytes;
+    // keyed by content hash, so renamed or duplicated ROMs share one copy
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private int cachedBytes;
+    private volatile Runnable changeListener = () -> {};
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+    private Thread watcher;
+
+    public RomLibrary(Path root) {
+        this(root, DEFAULT_CACHE_BYTES);
+    }
+
+    public RomLibrary(Path root, int maxCacheBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.indexFile = this.root.resolve(INDEX_NAME);
+        this.maxCacheBytes = maxCacheBytes;
+        readIndex();
+    }
+
+    // chip8.library system property, or ~/.chip8/roms
+    public static RomLibrary defaultLibrary() {
+        String configured = System.getProperty("chip8.library");
+        if (configured != null) {
+            return new RomLibrary(Paths.get(configured));
+        }
+        return new RomLibrary(Paths.get(System.getProperty("user.home"), ".chip8", "roms"));
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    // entries sorted by most recently played, then by title
+    public List<RomEntry> getEntries() {
+        List<RomEntry> sorted = new ArrayList<RomEntry>(entries.values());
+        sorted.sort(Comparator.comparingLong(RomEntry::getLastPlayed).reversed()
+                .thenComparing(RomEntry::getTitle, String.CASE_INSENSITIVE_ORDER));
+        return sorted;
+    }
+
+    public RomEntry getEntry(String path) {
+        return entries.get(path);
+    }
+
+    // called on the scanning or watching thread after the index changed
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // brings the index in line with the directory tree; true when anything changed
+    public boolean scan() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return false;
+        }
+        Map<String, RomEntry> seen = new HashMap<String, RomEntry>();
+        boolean changed = false;
+        try (Stream<Path> files = Files.walk(root)) {
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                if (!isRom(file)) {
+                    continue;
+                }
+                String path = relative(file);
+                RomEntry old = entries.get(path);
+                RomEntry entry = index(file, old);
+                if (entry != null) {
+                    seen.put(path, entry);
+                    changed |= entry != old;
+                }
+            }
+        }
+        changed |= entries.keySet().retainAll(seen.keySet());
+        entries.putAll(seen);
+        if (changed) {
+            writeIndex();
+            changeListener.run();
+        }
+        return changed;
+    }
+
+    // keeps the old entry when the file looks unchanged, otherwise hashes it again
+    private RomEntry index(Path file, RomEntry old) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (old != null && old.getSize() == attributes.size() && old.getLastModified() == lastModified) {
+                return old;
+            }
+            if (attributes.size() > MAX_ROM_SIZE) {
+                return null;
+            }
+            RomEntry entry = RomEntry.create(relative(file), lastModified, Files.readAllBytes(file));
+            return old == null ? entry : entry.withHistoryOf(old);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not index " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the ROM's bytes, from the cache when possible; null when the file is gone
+    // or no longer matches the index
+    public byte[] load(RomEntry entry) {
+        synchronized (cache) {
+            byte[] cached = cache.get(entry.getHash());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] rom;
+        try {
+            rom = Files.readAllBytes(root.resolve(entry.getPath()));
+        } catch (NoSuchFileException e) {
+            // removed since the last scan, which is not an error
+            return null;
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not read " + entry.getPath() + ": " + e.getMessage());
+            return null;
+        }
+        if (rom.length > MAX_ROM_SIZE || !AotCache.hash(rom).equals(entry.getHash())) {
+            return null;
+        }
+        synchronized (cache) {
+            if (cache.put(entry.getHash(), rom) == null) {
+                cachedBytes += rom.length;
+            }
+            Iterator<byte[]> oldest = cache.values().iterator();
+            while (cachedBytes > maxCacheBytes && oldest.hasNext()) {
+                byte[] evicted = oldest.next();
+                if (evicted != rom) {
+                    cachedBytes -= evicted.length;
+                    oldest.remove();
+                }
+            }
+        }
+        return rom;
+    }
+
+    int getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    // remembers when and how the ROM was played; returns the updated entry
+    public RomEntry markPlayed(RomEntry entry, long clockSpeed, EngineType engine) {
+        RomEntry played = entry.played(System.currentTimeMillis(), clockSpeed, engine);
+        entries.put(played.getPath(), played);
+        writeIndex();
+        changeListener.run();
+        return played;
+    }
+
+    // scans and then follows file system events, both on a daemon thread, until close()
+    public synchronized void watch() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        // registered before the scan so nothing that changes during it is missed
+        register(root);
+        watcher = new Thread(this::processEvents, "chip8-library");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (watcher != null) {
+            try {
+                watcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            watcher = null;
+        }
+    }
+
+    // watch keys are per directory, so every directory in the tree is registered
+    private void register(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.walk(directory)) {
+            Iterator<Path> iterator = directories.filter(Files::isDirectory).iterator();
+            while (iterator.hasNext()) {
+                Path next = iterator.next();
+                WatchKey key = next.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                synchronized (watchedDirectories) {
+                    watchedDirectories.put(key, next);
+                }
+            }
+        }
+    }
+
+    private void processEvents() {
+        try {
+            scan();
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory;
+                synchronized (watchedDirectories) {
+                    directory = watchedDirectories.get(key);
+                }
+                boolean changed = false;
+                boolean rescan = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        rescan = true;
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                        // files may have landed in the new directory before it was registered
+                        register(file);
+                        rescan = true;
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        changed |= removeUnder(relative(file));
+                    } else if (isRom(file)) {
+                        changed |= update(file);
+                    }
+                }
+                if (!key.reset()) {
+                    synchronized (watchedDirectories) {
+                        watchedDirectories.remove(key);
+                    }
+                }
+                if (rescan) {
+                    scan();
+                } else if (changed) {
+                    writeIndex();
+                    changeListener.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            System.err.println("ERROR: ROM library watcher stopped: " + e.getMessage());
+        }
+    }
+
+    private boolean update(Path file) {
+        String path = relative(file);
+        RomEntry old = entries.get(path);
+        RomEntry entry = index(file, old);
+        if (entry == null) {
+            return entries.remove(path) != null;
+        }
+        entries.put(path, entry);
+        return entry != old;
+    }
+
+    // a deleted path may be a single ROM or a whole directory
+    private boolean removeUnder(String path) {
+        String prefix = path + "/";
+        return entries.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+    }
+
+    private boolean isRom(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String relative(Path file) {
+        return root.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private void readIndex() {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                RomEntry entry = RomEntry.read(in);
+                entries.put(entry.getPath(), entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // a damaged index only costs a full rescan
+            System.err.println("ERROR: Could not read " + indexFile + ": " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private void writeIndex() {
+        synchronized (indexLock) {
+            writeIndexFile();
+        }
+    }
+
+    private void writeIndexFile() {
+        try {
+            // write to a temporary file first so a crash never leaves a partial index
+            Path temporary = Files.createTempFile(root, INDEX_NAME, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                List<RomEntry> snapshot = new ArrayList<RomEntry>(entries.values());
+                out.writeInt(snapshot.size());
+                for (RomEntry entry : snapshot) {
+                    entry.write(out);
+                }
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not write " + indexFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RomLibraryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] PONG = {0x60, 0x01, 0x12, 0x00};
+    // 00FF switches a SUPER-CHIP into high resolution
+    private static final byte[] HIRES = {0x00, (byte) 0xFF, 0x12, 0x02};
+
+    private Path write(String name, byte[] data) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, data);
+        return file;
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        write("Pong.ch8", PONG);
+        write("games/Super_Hires.ch8", HIRES);
+        write("notes.txt", PONG);
+        write("big.ch8", new byte[RomLibrary.MAX_ROM_SIZE + 1]);
+
+        RomLibrary library = new RomLibrary(folder.getRoot().toPath());
+        assertTrue(library.scan());
+        assertEquals(library.getEntries().size(), 2);
+
+        RomEntry pong = library.getEntry("Pong.ch8");
+        assertEquals(pong.getTitle(), "Pong");
+        assertEquals(pong.getPlatform(), RomEntry.Platform.CHIP8);
+        assertEquals(pong.getSize(), PONG.length);
+        assertEquals(pong.getHash(), AotCache.hash(PONG));
+        RomEntry hires = library.getEntry("games/Super_Hires.ch8");
+        assertEquals(hires.getTitle(), "Super Hires");
+        assertEquals(hires.getPlatform(), RomEntry.Platform.SCHIP);
+
+        // nothing changed, nothing to do
+        assertFalse(library.scan());
+    }
+
+    @Test
+    public void testIndexIsPersistent() throws IOException {
+        write("Pong.ch8", PONG);
+        RomLibrary library = new RomLibrary(folder.getRoot().toPath());
+        library.scan();
+        library.markPlayed(library.getEntry("Pong.ch8"), 1000, EngineType.JIT);
+
+        // a new library sees the entries and their settings before any scan
+        RomLibrary reopened = new RomLibrary(folder.getRoot().toPath());
+        RomEntry pong = reopened.getEntry("Pong.ch8");
+        assertNotNull(pong);
+        assertEquals(pong.getClockSpeed(), 1000);
+        assertEquals(pong.getEngine(), EngineType.JIT);
+        assertTrue(pong.getLastPlayed() > 0);
+        assertFalse(reopened.scan());
+    }
+
+    @Test
+    public void testIncrementalRescan() throws IOException {
+        Path pong = write("Pong.ch8", PONG);
+        write("Other.ch8", HIRES);
+        RomLibrary library = new RomLibrary(folder.getRoot().toPath());
+        library.scan();
+        library.markPlayed(library.getEntry("Pong.ch8"), 700, null);
+
+        // a rewritten file is hashed again but keeps its play history
+        Files.write(pong, HIRES);
+        Files.setLastModifiedTime(pong, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        Files.delete(folder.getRoot().toPath().resolve("Other.ch8"));
+        assertTrue(library.scan());
+
+        List<RomEntry> entries = library.getEntries();
+        assertEquals(entries.size(), 1);
+        assertEquals(entries.get(0).getHash(), AotCache.hash(HIRES));
+        assertEquals(entries.get(0).getClockSpeed(), 700);
+    }
+
+    @Test
+    public void testLoadUsesCache() throws IOException {
+        Path pong = write("Pong.ch8", PONG);
+        RomLibrary library = new RomLibrary(folder.getRoot().toPath());
+        library.scan();
+        RomEntry entry = library.getEntry("Pong.ch8");
+
+        byte[] first = library.load(entry);
+        assertArrayEquals(first, PONG);
+        // served from memory even once the file is gone
+        Files.delete(pong);
+        assertSame(library.load(entry), first);
+    }
+
+    @Test
+    public void testCacheEviction() throws IOException {
+        byte[] rom = new byte[1000];
+        RomLibrary library = new RomLibrary(folder.getRoot().toPath(), 2500);
+        for (int i = 0; i < 3; i++) {
+            rom[0] = (byte) i;
+            write("rom" + i + ".ch8", rom);
+        }
+        library.scan();
+
+        byte[] zero = library.load(library.getEntry("rom0.ch8"));
+        library.load(library.getEntry("rom1.ch8"));
+        // touching rom0 makes rom1 the least recently used
+        assertSame(library.load(library.getEntry("rom0.ch8")), zero);
+        library.load(library.getEntry("rom2.ch8"));
+        assertEquals(library.getCachedBytes(), 2000);
+
+        Path evicted = folder.getRoot().toPath().resolve("rom1.ch8");
+        Files.delete(evicted);
+        assertSame(library.load(library.getEntry("rom0.ch8")), zero);
+        // evicted and gone from the folder, so there is nothing to load
+        assertFalse(Files.exists(evicted));
+        assertNull(library.load(library.getEntry("rom1.ch8")));
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        write("Pong.ch8", PONG);
+        RomLibrary library = new RomLibrary(folder.getRoot().toPath());
+        try {
+            library.watch();
+            waitFor(library, "Pong.ch8", true);
+
+            write("New.ch8", HIRES);
+            waitFor(library, "New.ch8", true);
+            Files.delete(folder.getRoot().toPath().resolve("Pong.ch8"));
+            waitFor(library, "Pong.ch8", false);
+        } finally {
+            library.close();
+        }
+        assertNotNull(new RomLibrary(folder.getRoot().toPath()).getEntry("New.ch8"));
+    }
+
+    private static void waitFor(RomLibrary library, String path, boolean present) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while ((library.getEntry(path) != null) != present) {
+            assertTrue("timed out waiting for " + path, System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
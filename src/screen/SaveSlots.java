@@ -0,0 +1,57 @@
+package screen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Fixed-size save state slots in a memory-mapped file. Saving and loading copy
+// straight between the CPU and the mapping; the OS writes dirty pages back.
+public class SaveSlots implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer slots;
+    private final int count;
+
+    public SaveSlots(Path path, int count) throws IOException {
+        this.count = count;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) count * Chip8CPU.STATE_SIZE);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void save(Chip8CPU CPU, int slot) {
+        slots.position(offset(slot));
+        CPU.saveState(slots);
+    }
+
+    // returns false when nothing was saved in the slot yet
+    public boolean load(Chip8CPU CPU, int slot) {
+        slots.position(offset(slot));
+        try {
+            CPU.loadState(slots);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public void flush() {
+        slots.force();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int offset(int slot) {
+        if (slot < 0 || slot >= count) {
+            throw new IndexOutOfBoundsException("No save slot " + slot);
+        }
+        return slot * Chip8CPU.STATE_SIZE;
+    }
+}
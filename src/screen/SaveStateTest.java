@@ -0,0 +1,123 @@
+package screen;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SaveStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Chip8CPU randomCPU(long seed) {
+        Random random = new Random(seed);
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        byte[] rom = new byte[3584];
+        random.nextBytes(rom);
+        CPU.loadROM(rom);
+        for (int i = 0; i < 16; i++) {
+            CPU.setVRegisterAtIndex(i, random.nextInt(256));
+            CPU.setStackAtIndex(i, random.nextInt(4096));
+            CPU.setKeyAtIndex(i, random.nextInt(2));
+        }
+        for (int i = 0; i < 300; i++) {
+            CPU.setGFXAtXY(random.nextInt(64), random.nextInt(32));
+        }
+        CPU.setIndexRegister(random.nextInt(4096));
+        CPU.setPC(0x200 + 2 * random.nextInt(100));
+        CPU.setStackPointer(random.nextInt(16));
+        CPU.setDelayTimer(random.nextInt(256));
+        CPU.setSoundTimer(random.nextInt(256));
+        return CPU;
+    }
+
+    private static void assertSameState(Chip8CPU expected, Chip8CPU actual) {
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(expected.getMemoryAtIndex(i) & 0xFF, actual.getMemoryAtIndex(i) & 0xFF);
+        }
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected.getVRegisterAtIndex(i), actual.getVRegisterAtIndex(i));
+            assertEquals(expected.getStackAtIndex(i), actual.getStackAtIndex(i));
+        }
+        assertEquals(expected.getKeys(), actual.getKeys());
+        for (int y = 0; y < 32; y++) {
+            assertEquals(expected.getGFXRow(y), actual.getGFXRow(y));
+        }
+        assertEquals(expected.getIndexRegister(), actual.getIndexRegister());
+        assertEquals(expected.getPC(), actual.getPC());
+        assertEquals(expected.getStackPointer(), actual.getStackPointer());
+        assertEquals(expected.getDelayTimer(), actual.getDelayTimer());
+        assertEquals(expected.getSoundTimer(), actual.getSoundTimer());
+        assertEquals(expected.getRomLength(), actual.getRomLength());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Chip8CPU original = randomCPU(1);
+        ByteBuffer buffer = ByteBuffer.allocate(Chip8CPU.STATE_SIZE);
+        original.saveState(buffer);
+        assertEquals(buffer.position(), Chip8CPU.STATE_SIZE);
+
+        Chip8CPU restored = new Chip8CPU();
+        restored.initialize();
+        buffer.flip();
+        restored.loadState(buffer);
+        assertSameState(original, restored);
+        assertEquals(restored.takeDirtyRows(), -1);
+    }
+
+    @Test
+    public void testRestoreInvalidatesBlocks() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        // 200: V0 = 1, 202: jump 202
+        CPU.loadROM(new byte[] {0x60, 0x01, 0x12, 0x02});
+        ByteBuffer checkpoint = ByteBuffer.allocate(Chip8CPU.STATE_SIZE);
+        CPU.saveState(checkpoint);
+
+        JitEngine engine = new JitEngine(CPU);
+        engine.run(100);
+        assertEquals(CPU.getVRegisterAtIndex(0), 1);
+
+        // the checkpoint now holds different code at 200
+        checkpoint.put(6 + 0x201, (byte) 0x07);
+        checkpoint.flip();
+        CPU.loadState(checkpoint);
+        engine.run(100);
+        assertEquals(CPU.getVRegisterAtIndex(0), 7);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsGarbage() {
+        Chip8CPU CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadState(ByteBuffer.allocate(Chip8CPU.STATE_SIZE));
+    }
+
+    @Test
+    public void testSlots() throws Exception {
+        Chip8CPU first = randomCPU(2);
+        Chip8CPU second = randomCPU(3);
+        try (SaveSlots slots = new SaveSlots(folder.getRoot().toPath().resolve("states.c8s"), 4)) {
+            slots.save(first, 0);
+            slots.save(second, 3);
+            slots.flush();
+        }
+
+        try (SaveSlots slots = new SaveSlots(folder.getRoot().toPath().resolve("states.c8s"), 4)) {
+            Chip8CPU restored = new Chip8CPU();
+            restored.initialize();
+            assertFalse(slots.load(restored, 1));
+            assertTrue(slots.load(restored, 3));
+            assertSameState(second, restored);
+            assertTrue(slots.load(restored, 0));
+            assertSameState(first, restored);
+        }
+    }
+}
@@ -3,64 +3,201 @@ package screen;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.geometry.Pos;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.Label;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import javafx.scene.paint.Color;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
-import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
 import javafx.event.ActionEvent;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.io.File;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class Screen {
-    private Map<String, Integer> buttonMap = new HashMap<String, Integer>();
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final int PIXEL_OFF = 0xFF000000;
+    private static final long HUD_INTERVAL_NANOS = 250_000_000L;
+
+    // CHIP-8 key for each KeyCode ordinal, or -1
+    private final byte[] keypad = new byte[KeyCode.values().length];
     @FXML
     private BorderPane pane;
     @FXML
     private Canvas canvas;
+    @FXML
+    private CheckMenuItem recordItem;
+    @FXML
+    private CheckMenuItem metricsItem;
+    @FXML
+    private CheckMenuItem profilerItem;
+    @FXML
+    private CheckMenuItem pauseItem;
     private Stage stage;
     private GraphicsContext gContext;
     private double pixelScale = 8;
+    // the frame is drawn at native resolution and scaled up in a single drawImage
+    private final WritableImage frame = new WritableImage(WIDTH, HEIGHT);
+    private final int[] pixels = new int[WIDTH * HEIGHT];
+    // rows currently on the canvas, only touched on the FX thread
+    private final long[] shown = new long[HEIGHT];
+    private final FrameExchange frames = new FrameExchange();
+    // press time carried over from a frame the display never took, emulation thread only
+    private long droppedInputTime;
+    private final EmulatorMetrics metrics = new EmulatorMetrics();
+    // metrics overlay in the top left corner of the canvas; created in init() so a
+    // Screen can be built without a running FX toolkit
+    private Label hud;
+    private long hudUpdated;
+    // counts are kept across restarts and cleared when another ROM is loaded
+    private final ExecutionProfile profile = new ExecutionProfile();
+    private ProfilerView profilerView;
+    private boolean profiling;
+    // picks up the latest published frame once per pulse instead of a runLater per frame
+    private final AnimationTimer frameTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            long[] latest = frames.latest();
+            if (latest != null) {
+                showFrame(latest);
+            }
+            if (hud != null && hud.isVisible() && now - hudUpdated >= HUD_INTERVAL_NANOS) {
+                hud.setText(metrics.summary());
+                hudUpdated = now;
+            }
+        }
+    };
     private Chip8CPU CPU;
     private FileChooser fileChooser = new FileChooser();
-    private String filePath;
-    private ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(2);
-    private ScheduledFuture<?> cpuThread;
-    private ScheduledFuture<?> displayThread;
+    private FileChooser recordChooser = new FileChooser();
+    private Path recordingPath;
+    // bytes of the loaded ROM, kept so a reload never reads the file again
+    private byte[] rom;
+    private RomLibrary library;
+    private RomBrowser browser;
+    // settings given on the command line win over the ones a library ROM was last played with
+    private final String configuredEngine = System.getProperty("chip8.engine");
+    private final Long configuredClock = Long.getLong("chip8.clock");
+    private EngineType engineType = defaultEngine();
+    private long clockSpeed = defaultClock();
+    // emulated frames per real frame while fast forwarding, 0 for unthrottled
+    private int turboSpeed = Integer.getInteger("chip8.turbo", 8);
+    private int turboFrameSkip = Integer.getInteger("chip8.frameskip", 1);
+    private boolean turbo;
+    private boolean paused;
+    private FrameScheduler scheduler;
+    private AudioOutput audio;
+    // machine state right after the ROM was loaded, and the quick save slot
+    private final ByteBuffer bootState = ByteBuffer.allocateDirect(Chip8CPU.STATE_SIZE);
+    private final ByteBuffer quickSave = ByteBuffer.allocateDirect(Chip8CPU.STATE_SIZE);
+    private boolean hasQuickSave;
+    // per-frame history for rewinding while backspace is held, null when disabled
+    private final RewindBuffer rewindBuffer = createRewindBuffer(Integer.getInteger("chip8.rewind", 4));
 
     public Screen() {
-        buttonMap.put("1", 1);
-        buttonMap.put("2", 2);
-        buttonMap.put("3", 3);
-        buttonMap.put("4", 12);
-        buttonMap.put("q", 4);
-        buttonMap.put("w", 5);
-        buttonMap.put("e", 6);
-        buttonMap.put("r", 13);
-        buttonMap.put("a", 7);
-        buttonMap.put("s", 8);
-        buttonMap.put("d", 9);
-        buttonMap.put("f", 14);
-        buttonMap.put("z", 10);
-        buttonMap.put("x", 0);
-        buttonMap.put("c", 11);
-        buttonMap.put("v", 15);
+        Arrays.fill(keypad, (byte) -1);
+        mapKey(KeyCode.DIGIT1, 1);
+        mapKey(KeyCode.DIGIT2, 2);
+        mapKey(KeyCode.DIGIT3, 3);
+        mapKey(KeyCode.DIGIT4, 12);
+        mapKey(KeyCode.Q, 4);
+        mapKey(KeyCode.W, 5);
+        mapKey(KeyCode.E, 6);
+        mapKey(KeyCode.R, 13);
+        mapKey(KeyCode.A, 7);
+        mapKey(KeyCode.S, 8);
+        mapKey(KeyCode.D, 9);
+        mapKey(KeyCode.F, 14);
+        mapKey(KeyCode.Z, 10);
+        mapKey(KeyCode.X, 0);
+        mapKey(KeyCode.C, 11);
+        mapKey(KeyCode.V, 15);
+    }
+
+    private void mapKey(KeyCode code, int key) {
+        keypad[code.ordinal()] = (byte) key;
     }
 
     @FXML
     private void handleLoad() {
         File file = fileChooser.showOpenDialog(stage);
-        if (file != null) {
-            filePath = file.toString();
-            restartCPU();
+        if (file == null) {
+            return;
+        }
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            if (data.length > RomLibrary.MAX_ROM_SIZE) {
+                System.err.println("ERROR: " + file + " is too large for CHIP-8 memory");
+                return;
+            }
+            rom = data;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        stage.setTitle("CHIP-8 Emulator - " + file.getName());
+        engineType = defaultEngine();
+        clockSpeed = defaultClock();
+        loadCPU();
+    }
+
+    @FXML
+    private void handleLibraryAction(ActionEvent event) {
+        if (browser == null) {
+            library = RomLibrary.defaultLibrary();
+            if (!Files.isDirectory(library.getRoot())) {
+                DirectoryChooser chooser = new DirectoryChooser();
+                chooser.setTitle("ROM Library");
+                File directory = chooser.showDialog(stage);
+                if (directory == null) {
+                    return;
+                }
+                library = new RomLibrary(directory.toPath());
+            }
+            try {
+                library.watch();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            browser = new RomBrowser(library, stage, this::playRom);
         }
+        browser.show();
+    }
+
+    // ROM bytes come from the library's cache and the ROM's last settings are reused
+    private void playRom(RomEntry entry) {
+        byte[] data = library.load(entry);
+        if (data == null) {
+            System.err.println("ERROR: Could not load " + entry.getPath());
+            return;
+        }
+        rom = data;
+        engineType = configuredEngine == null && entry.getEngine() != null ? entry.getEngine() : defaultEngine();
+        clockSpeed = configuredClock == null && entry.getClockSpeed() > 0 ? entry.getClockSpeed() : defaultClock();
+        library.markPlayed(entry, clockSpeed, engineType);
+        stage.setTitle("CHIP-8 Emulator - " + entry.getTitle());
+        loadCPU();
+        canvas.requestFocus();
+    }
+
+    private EngineType defaultEngine() {
+        return EngineType.parse(configuredEngine == null ? "block" : configuredEngine);
+    }
+
+    private long defaultClock() {
+        return configuredClock == null ? FrameScheduler.DEFAULT_CLOCK_SPEED : configuredClock;
     }
 
     @FXML
@@ -68,83 +205,376 @@ public class Screen {
         restartCPU();
     }
 
+    @FXML
+    private void handleSaveStateAction(ActionEvent event) {
+        onEmulationThread(() -> {
+            quickSave.clear();
+            CPU.saveState(quickSave);
+            hasQuickSave = true;
+        });
+    }
+
+    @FXML
+    private void handleLoadStateAction(ActionEvent event) {
+        stopRecording();
+        FrameScheduler running = scheduler;
+        onEmulationThread(() -> {
+            if (hasQuickSave) {
+                quickSave.rewind();
+                if (running != null) {
+                    running.loadState(quickSave);
+                } else {
+                    CPU.loadState(quickSave);
+                }
+            }
+        });
+    }
+
+    @FXML
+    private void handleTurboAction(ActionEvent event) {
+        setTurbo(((CheckMenuItem) event.getSource()).isSelected());
+    }
+
+    @FXML
+    private void handlePauseAction(ActionEvent event) {
+        setPaused(pauseItem.isSelected());
+    }
+
+    @FXML
+    private void handleStepAction(ActionEvent event) {
+        if (scheduler == null) {
+            return;
+        }
+        // a step off the frame grid cannot be replayed, so it ends any recording
+        stopRecording();
+        setPaused(true);
+        scheduler.step();
+    }
+
+    @FXML
+    private void handleStepFrameAction(ActionEvent event) {
+        if (scheduler == null) {
+            return;
+        }
+        setPaused(true);
+        scheduler.stepFrame();
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        pauseItem.setSelected(paused);
+        if (scheduler != null) {
+            scheduler.setPaused(paused);
+        }
+    }
+
     @FXML
     private void handleKeyPressed(KeyEvent event) {
-        System.out.println("Pressed: " + event.getText());
+        if (event.getCode() == KeyCode.BACK_SPACE && scheduler != null) {
+            // a rewind cannot be replayed, so it ends any recording
+            stopRecording();
+            scheduler.setRewinding(true);
+        }
 
-        if (buttonMap.containsKey(event.getText())) {
-            CPU.setKeyAtIndex(buttonMap.get(event.getText()), 1);
+        int key = keypad[event.getCode().ordinal()];
+        if (key >= 0) {
+            setKey(key, true);
         }
     }
 
     @FXML
     private void handleKeyReleased(KeyEvent event) {
-        System.out.println("Released: " + event.getText());
+        if (event.getCode() == KeyCode.BACK_SPACE && scheduler != null) {
+            scheduler.setRewinding(false);
+        }
+
+        int key = keypad[event.getCode().ordinal()];
+        if (key >= 0) {
+            setKey(key, false);
+        }
+    }
+
+    // key changes reach the CPU at the next frame boundary so recordings can replay them
+    private void setKey(int index, boolean pressed) {
+        if (scheduler != null) {
+            // timestamped here, since key events carry no time of their own; repeats are dropped
+            scheduler.keyChanged(index, pressed, System.nanoTime());
+        } else {
+            CPU.setKeyAtIndex(index, pressed ? 1 : 0);
+        }
+    }
+
+    @FXML
+    private void handleRecordAction(ActionEvent event) {
+        if (!recordItem.isSelected()) {
+            stopRecording();
+            return;
+        }
+        File file = scheduler == null ? null : recordChooser.showSaveDialog(stage);
+        if (file == null) {
+            recordItem.setSelected(false);
+            return;
+        }
+        recordingPath = file.toPath();
+        scheduler.execute(scheduler::startRecording);
+    }
 
-        if (buttonMap.containsKey(event.getText())) {
-            CPU.setKeyAtIndex(buttonMap.get(event.getText()), 0);
+    private void stopRecording() {
+        Path target = recordingPath;
+        if (target == null) {
+            return;
         }
+        recordingPath = null;
+        recordItem.setSelected(false);
+        FrameScheduler recording = scheduler;
+        recording.execute(() -> {
+            InputRecorder recorder = recording.stopRecording();
+            if (recorder != null) {
+                try {
+                    recorder.save(target);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
     }
 
     public void init() {
         stage = (Stage) canvas.getScene().getWindow();
         canvas.setFocusTraversable(true);
         pane.setStyle("-fx-background-color: black");
-        pane.setCenter(canvas);
+        hud = new Label();
+        hud.setMouseTransparent(true);
+        hud.setStyle("-fx-text-fill: white; -fx-background-color: rgba(0, 0, 0, 0.6); -fx-font-family: monospace; -fx-padding: 2 4 2 4");
+        hud.setVisible(Boolean.getBoolean("chip8.hud"));
+        metricsItem.setSelected(hud.isVisible());
+        StackPane.setAlignment(hud, Pos.TOP_LEFT);
+        pane.setCenter(new StackPane(canvas, hud));
         gContext = canvas.getGraphicsContext2D();
+        gContext.setImageSmoothing(false);
         CPU = new Chip8CPU();
         CPU.initialize();
         fileChooser.setInitialDirectory(new File(System.getProperty("user.dir")));
+        metrics.register();
+        audio = AudioOutput.fromProperties();
+        audio.start();
+        metrics.setAudio(audio);
+        frameTimer.start();
+    }
+
+    @FXML
+    private void handleMetricsAction(ActionEvent event) {
+        hud.setVisible(((CheckMenuItem) event.getSource()).isSelected());
+        hudUpdated = 0;
+    }
+
+    @FXML
+    private void handleProfilerAction(ActionEvent event) {
+        if (!profilerItem.isSelected()) {
+            profilerView.hide();
+            return;
+        }
+        if (profilerView == null) {
+            profilerView = new ProfilerView(profile, () -> CPU, stage,
+                    () -> onEmulationThread(profile::reset), this::stopProfiling);
+        }
+        profiling = true;
+        if (scheduler != null) {
+            scheduler.setProfile(profile);
+        }
+        profilerView.show();
+    }
+
+    // the window was closed, so the CPU goes back to running without counters
+    private void stopProfiling() {
+        profiling = false;
+        profilerItem.setSelected(false);
+        if (scheduler != null) {
+            scheduler.setProfile(null);
+        }
+    }
+
+    // lets benchmarks and tools drive the renderer without loading the FXML scene
+    void attach(Canvas canvas, Chip8CPU CPU) {
+        this.canvas = canvas;
+        this.gContext = canvas.getGraphicsContext2D();
+        this.gContext.setImageSmoothing(false);
+        this.CPU = CPU;
     }
 
     public void updateDisplay() {
-        int[][] gfx = CPU.getGFX();
-        for (int y = 0; y < 32; y++) {
-            for (int x = 0; x < 64; x++) {
-                if (gfx[x][y] == 1) {
-                    gContext.setFill(Color.WHITE);
-                } else {
-                    gContext.setFill(Color.BLACK);
-                }
-                gContext.fillRect(x*pixelScale, y*pixelScale, pixelScale, pixelScale);
+        updateDisplay(-1);
+    }
+
+    public void updateDisplay(int rows) {
+        CPU.copyFramebuffer(shown);
+        drawRows(rows);
+    }
+
+    // called on the FX thread with a complete frame from the exchange
+    private void showFrame(long[] frame) {
+        int rows = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            if (frame[y] != shown[y]) {
+                shown[y] = frame[y];
+                rows |= 1 << y;
             }
         }
+        drawRows(rows);
+        long inputTime = frame[FrameExchange.INPUT_TIME];
+        if (inputTime != 0) {
+            metrics.inputShown(System.nanoTime() - inputTime);
+        }
+    }
+
+    // repaints the band between the first and last dirty row with one upload and one draw
+    private void drawRows(int rows) {
+        if (rows == 0) {
+            return;
+        }
+        RenderEvent event = new RenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int first = Integer.numberOfTrailingZeros(rows);
+        int last = 31 - Integer.numberOfLeadingZeros(rows);
+        for (int y = first; y <= last; y++) {
+            long row = shown[y];
+            int offset = y * WIDTH;
+            for (int x = 0; x < WIDTH; x++) {
+                // a set pixel turns into -1, which is opaque white
+                pixels[offset + x] = PIXEL_OFF | (int) -((row >>> (63 - x)) & 1);
+            }
+        }
+        int height = last - first + 1;
+        frame.getPixelWriter().setPixels(0, first, WIDTH, height, PixelFormat.getIntArgbPreInstance(),
+                pixels, first * WIDTH, WIDTH);
+        gContext.drawImage(frame, 0, first, WIDTH, height,
+                0, first * pixelScale, WIDTH * pixelScale, height * pixelScale);
+        metrics.frameRendered(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = height;
+            event.commit();
+        }
     }
 
     public void startThreads() {
-        cpuThread = threadPool.scheduleWithFixedDelay(() -> {
-            CPU.emulateCPUCycle();
-        }, 2, 2, TimeUnit.MILLISECONDS);
-
-        displayThread = threadPool.scheduleWithFixedDelay(() -> {
-            CPU.updateTimers();
-            if (CPU.isVF()) {
-                Platform.runLater(() -> {
-                    updateDisplay();
-                    CPU.setVF(false);
-                });
+        scheduler = new FrameScheduler(CPU, engineType.create(CPU), clockSpeed, this::publishFrame);
+        scheduler.setRewindBuffer(rewindBuffer);
+        scheduler.setMetrics(metrics);
+        scheduler.setProfile(profiling ? profile : null);
+        scheduler.setAudio(audio);
+        setTurbo(turbo);
+        scheduler.setPaused(paused);
+        scheduler.start();
+    }
+
+    public void setTurbo(boolean turbo) {
+        this.turbo = turbo;
+        if (scheduler != null) {
+            scheduler.setSpeed(turbo ? turboSpeed : 1);
+            scheduler.setFrameSkip(turbo ? turboFrameSkip : 1);
+        }
+    }
+
+    // runs on the emulation thread at the end of every frame
+    private void publishFrame() {
+        if (CPU.takeDirtyRows() != 0) {
+            long[] back = frames.back();
+            CPU.copyFramebuffer(back);
+            long inputTime = scheduler.takeInputTime();
+            // a key change in a dropped frame is timed by the frame that replaced it
+            back[FrameExchange.INPUT_TIME] = droppedInputTime != 0 ? droppedInputTime : inputTime;
+            droppedInputTime = 0;
+            if (frames.publish()) {
+                metrics.frameDropped();
+                droppedInputTime = frames.back()[FrameExchange.INPUT_TIME];
             }
-        }, 17, 17, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void stopThreads() {
-        if (cpuThread != null) {
-            cpuThread.cancel(true);
-            displayThread.cancel(true);
+        if (scheduler != null) {
+            scheduler.stop();
         }
     }
 
     public void stopPool() {
-        threadPool.shutdownNow();
+        frameTimer.stop();
+        stopThreads();
+        if (audio != null) {
+            audio.close();
+        }
+        if (library != null) {
+            try {
+                library.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
+    private static RewindBuffer createRewindBuffer(int megabytes) {
+        if (megabytes <= 0) {
+            return null;
+        }
+        return new RewindBuffer(Math.max(megabytes << 20, RewindBuffer.MAX_ENTRY_SIZE));
+    }
+
+    private void onEmulationThread(Runnable task) {
+        if (scheduler != null) {
+            scheduler.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private void loadCPU() {
+        ResetEvent event = beginReset(ResetEvent.LOAD);
+        stopRecording();
+        stopThreads();
+        CPU = new Chip8CPU();
+        CPU.initialize();
+        CPU.loadROM(rom);
+        bootState.clear();
+        CPU.saveState(bootState);
+        hasQuickSave = false;
+        profile.reset();
+        if (rewindBuffer != null) {
+            rewindBuffer.clear();
+        }
+        startThreads();
+        event.commit();
+    }
+
+    // restores the state saved right after loading instead of reading the ROM again
     public void restartCPU() {
-        if (filePath != null) {
-            stopThreads();
-            CPU = new Chip8CPU();
-            CPU.initialize();
-            CPU.loadROM(filePath);
-            startThreads();
+        if (rom == null) {
+            return;
+        }
+        stopRecording();
+        if (scheduler == null || !scheduler.isRunning()) {
+            loadCPU();
+            return;
+        }
+        ResetEvent event = beginReset(ResetEvent.RESTART);
+        FrameScheduler running = scheduler;
+        running.execute(() -> {
+            bootState.rewind();
+            running.loadState(bootState);
+            event.commit();
+        });
+    }
+
+    // the event is committed from whichever thread finishes the reset
+    private ResetEvent beginReset(String kind) {
+        ResetEvent event = new ResetEvent();
+        if (event.isEnabled()) {
+            event.kind = kind;
+            event.romSize = rom.length;
+            event.engine = engineType.name();
         }
+        event.begin();
+        return event;
     }
 }
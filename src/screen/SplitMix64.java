@@ -0,0 +1,16 @@
+package screen;
+
+// splitmix64: one long of state, no allocation, and every seed gives a full-period stream
+final class SplitMix64 {
+    static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private SplitMix64() {
+    }
+
+    // output for a state that was just advanced by GAMMA
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,124 @@
+package screen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class Superinstructions {
+    private Superinstructions() {
+    }
+
+    static Instruction[] fuse(int[] opcodes, int conditionalJump) {
+        List<Instruction> fused = new ArrayList<Instruction>();
+        int count = opcodes.length;
+        int i = 0;
+        while (i < count) {
+            int opcode = opcodes[i];
+            if (conditionalJump >= 0 && i == count - 2) {
+                fused.add(skipJump(opcode, opcodes[i + 1], conditionalJump));
+                i += 2;
+            } else if (i + 2 < count && family(opcode) == 0x6000
+                    && family(opcodes[i + 1]) == 0xA000 && family(opcodes[i + 2]) == 0xD000) {
+                fused.add(setIndexAndDraw(opcode, opcodes[i + 1], opcodes[i + 2]));
+                i += 3;
+            } else if (i + 1 < count && family(opcode) == 0xA000 && family(opcodes[i + 1]) == 0xD000) {
+                fused.add(indexAndDraw(opcode, opcodes[i + 1]));
+                i += 2;
+            } else {
+                fused.add(OpcodeTable.get(opcode));
+                i++;
+            }
+        }
+        return fused.toArray(new Instruction[0]);
+    }
+
+    private static int family(int opcode) {
+        return opcode & 0xF000;
+    }
+
+    // 6XKK, ANNN, DXYN: position a coordinate, point I at a sprite and draw it
+    private static Instruction setIndexAndDraw(int set, int index, int draw) {
+        int X = (set & 0x0F00) >> 8;
+        int KK = set & 0x00FF;
+        int NNN = index & 0x0FFF;
+        int drawX = (draw & 0x0F00) >> 8;
+        int drawY = (draw & 0x00F0) >> 4;
+        int height = draw & 0x000F;
+        return new Instruction(set, (CPU, x, y, n, kk, nnn) -> {
+            CPU.OP6XKK(X, KK);
+            CPU.OPANNN(NNN);
+            CPU.OPDXYN(drawX, drawY, height);
+        }, 3);
+    }
+
+    // ANNN, DXYN
+    private static Instruction indexAndDraw(int index, int draw) {
+        int NNN = index & 0x0FFF;
+        int drawX = (draw & 0x0F00) >> 8;
+        int drawY = (draw & 0x00F0) >> 4;
+        int height = draw & 0x000F;
+        return new Instruction(index, (CPU, x, y, n, kk, nnn) -> {
+            CPU.OPANNN(NNN);
+            CPU.OPDXYN(drawX, drawY, height);
+        }, 2);
+    }
+
+    // a compare-and-skip whose skipped instruction is a 1NNN jump
+    private static Instruction skipJump(int skip, int jump, int jumpAddress) {
+        int X = (skip & 0x0F00) >> 8;
+        int Y = (skip & 0x00F0) >> 4;
+        int KK = skip & 0x00FF;
+        int target = jump & 0x0FFF;
+        Operation operation;
+        switch (family(skip)) {
+            case 0x3000:
+                operation = (CPU, x, y, n, kk, nnn) -> {
+                    CPU.OP3XKK(X, KK);
+                    if (CPU.getPC() == jumpAddress) {
+                        CPU.OP1NNN(target);
+                    }
+                };
+                break;
+            case 0x4000:
+                operation = (CPU, x, y, n, kk, nnn) -> {
+                    CPU.OP4XKK(X, KK);
+                    if (CPU.getPC() == jumpAddress) {
+                        CPU.OP1NNN(target);
+                    }
+                };
+                break;
+            case 0x5000:
+                operation = (CPU, x, y, n, kk, nnn) -> {
+                    CPU.OP5XY0(X, Y);
+                    if (CPU.getPC() == jumpAddress) {
+                        CPU.OP1NNN(target);
+                    }
+                };
+                break;
+            case 0x9000:
+                operation = (CPU, x, y, n, kk, nnn) -> {
+                    CPU.OP9XY0(X, Y);
+                    if (CPU.getPC() == jumpAddress) {
+                        CPU.OP1NNN(target);
+                    }
+                };
+                break;
+            default:
+                if (KK == 0x9E) {
+                    operation = (CPU, x, y, n, kk, nnn) -> {
+                        CPU.OPEX9E(X);
+                        if (CPU.getPC() == jumpAddress) {
+                            CPU.OP1NNN(target);
+                        }
+                    };
+                } else {
+                    operation = (CPU, x, y, n, kk, nnn) -> {
+                        CPU.OPEXA1(X);
+                        if (CPU.getPC() == jumpAddress) {
+                            CPU.OP1NNN(target);
+                        }
+                    };
+                }
+        }
+        return new Instruction(skip, operation, 2);
+    }
+}
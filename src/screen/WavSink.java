@@ -0,0 +1,63 @@
+package screen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+
+// Writes PCM to a WAV file, for headless runs and tests. The header is written
+// with empty sizes first and filled in when the sink is closed.
+public class WavSink implements AudioSink {
+    private static final int HEADER_SIZE = 44;
+
+    private final FileChannel channel;
+    private final AudioFormat format;
+    private long dataBytes;
+
+    public WavSink(Path path, AudioFormat format) throws IOException {
+        this.format = format;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(header());
+    }
+
+    @Override
+    public void write(byte[] data, int length) throws IOException {
+        writeFully(ByteBuffer.wrap(data, 0, length));
+        dataBytes += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.position(0);
+            writeFully(header());
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private ByteBuffer header() {
+        int data = (int) Math.min(dataBytes, 0xFFFFFFFFL - (HEADER_SIZE - 8));
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt(HEADER_SIZE - 8 + data);
+        header.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '}).putInt(16);
+        header.putShort((short) 1).putShort((short) format.getChannels());
+        header.putInt((int) format.getSampleRate());
+        header.putInt((int) format.getSampleRate() * format.getFrameSize());
+        header.putShort((short) format.getFrameSize()).putShort((short) format.getSampleSizeInBits());
+        header.put(new byte[] {'d', 'a', 't', 'a'}).putInt(data);
+        header.flip();
+        return header;
+    }
+}